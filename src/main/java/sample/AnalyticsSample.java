@@ -0,0 +1,108 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.util.iterator.IteratorUtils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Uploads generated data, computes the {@link AtomAnalytics} reports once with a single
+ * threaded scan through the traversal API and once with the graph computer, compares both
+ * and checks the depth written back to the graph.
+ */
+public class AnalyticsSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        int workers = Runtime.getRuntime().availableProcessors();
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            workers = Integer.parseInt(args[2]);
+        }
+
+        System.out.printf("elements: %d, workload: %s, workers: %d%n", N, workload, workers);
+
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage()) {
+            new DataGenerator(Workload.preset(workload), N).upload(storage);
+
+            long time = System.currentTimeMillis();
+            Scan scan = new Scan(storage);
+            long scanTime = System.currentTimeMillis() - time;
+
+            time = System.currentTimeMillis();
+            AtomAnalytics analytics = AtomAnalytics.compute(storage, workers, true);
+            long computeTime = System.currentTimeMillis() - time;
+
+            analytics.print();
+
+            Vertex deepest = storage.traversal().V().has(AtomAnalytics.DEPTH, analytics.getDepths().lastKey()).next();
+            int writtenDepth = deepest.value(AtomAnalytics.DEPTH);
+            storage.rollback();
+
+            System.out.printf("scan: %dms, graph computer: %dms%n", scanTime, computeTime);
+            System.out.printf("same types: %b, same parents: %b, same depths: %b, same duplicates: %b, written depth: %d%n",
+                    scan.types.equals(analytics.getTypes()), scan.parentCounts.equals(analytics.getParentCounts()),
+                    scan.depths.equals(analytics.getDepths()), scan.duplicates.equals(analytics.getDuplicates()),
+                    writtenDepth);
+        }
+    }
+
+    /**
+     * The same reports computed one vertex at a time in a single transaction.
+     */
+    static class Scan {
+        final SortedMap<String, Long> types = new TreeMap<>();
+        final SortedMap<Integer, Long> parentCounts = new TreeMap<>();
+        final SortedMap<Integer, Long> depths = new TreeMap<>();
+        final SortedMap<String, Long> duplicates = new TreeMap<>();
+
+        Scan(JanusGraphSorage storage) {
+
+            List<Vertex> atoms = storage.traversal().V().hasLabel("Leaf", "Node").toList();
+            Map<Object, Integer> depthById = new HashMap<>();
+            Map<String, Long> keys = new HashMap<>();
+
+            for (Vertex atom : atoms) {
+                types.merge(atom.label() + "." + atom.value("type"), 1L, Long::sum);
+                parentCounts.merge((int) IteratorUtils.count(atom.edges(Direction.OUT)), 1L, Long::sum);
+                depths.merge(depth(atom, depthById), 1L, Long::sum);
+                keys.merge(AtomAnalytics.DepthProgram.getKey(atom), 1L, Long::sum);
+            }
+
+            keys.forEach((key, count) -> {
+                if (count > 1) {
+                    duplicates.put(key, count);
+                }
+            });
+            storage.rollback();
+        }
+
+        private static int depth(Vertex atom, Map<Object, Integer> depthById) {
+            Integer depth = depthById.get(atom.id());
+            if (depth == null) {
+                depth = 0;
+                for (Iterator<Vertex> children = atom.vertices(Direction.IN); children.hasNext(); ) {
+                    depth = Math.max(depth, depth(children.next(), depthById) + 1);
+                }
+                depthById.put(atom.id(), depth);
+            }
+            return depth;
+        }
+    }
+}
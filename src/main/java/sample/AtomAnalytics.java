@@ -0,0 +1,339 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.computer.ComputerResult;
+import org.apache.tinkerpop.gremlin.process.computer.GraphComputer;
+import org.apache.tinkerpop.gremlin.process.computer.KeyValue;
+import org.apache.tinkerpop.gremlin.process.computer.MapReduce;
+import org.apache.tinkerpop.gremlin.process.computer.Memory;
+import org.apache.tinkerpop.gremlin.process.computer.MemoryComputeKey;
+import org.apache.tinkerpop.gremlin.process.computer.MessageCombiner;
+import org.apache.tinkerpop.gremlin.process.computer.MessageScope;
+import org.apache.tinkerpop.gremlin.process.computer.Messenger;
+import org.apache.tinkerpop.gremlin.process.computer.VertexComputeKey;
+import org.apache.tinkerpop.gremlin.process.computer.VertexProgram;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphComputer;
+import org.janusgraph.core.schema.JanusGraphManagement;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * Full graph reports computed with the in-process graph computer of JanusGraph, which
+ * runs vertex programs over partitions of the graph on all workers.
+ * <p>
+ * {@link DepthProgram} computes for every atom its depth, the longest path down to a leaf,
+ * by sending depths from children to parents until nothing changes, and its number of
+ * parents. Map reduce jobs then build the histograms of types, parent counts and depths
+ * and collect the keys of atoms stored more than once. Depth and parent count can
+ * be written back as vertex properties.
+ * <p>
+ * Depths and parents follow the child edges, so storages with the property link
+ * representation, which has no edges, are rejected.
+ */
+public class AtomAnalytics {
+
+    static final String DEPTH = "depth";
+    static final String PARENTS = "parents";
+
+    static final String TYPES = "types";
+    static final String PARENT_COUNTS = "parentCounts";
+    static final String DEPTHS = "depths";
+    static final String DUPLICATES = "duplicates";
+
+    final SortedMap<String, Long> types;
+    final SortedMap<Integer, Long> parentCounts;
+    final SortedMap<Integer, Long> depths;
+    final SortedMap<String, Long> duplicates;
+    final int iterations;
+    final long runtime;
+
+    AtomAnalytics(Memory memory) {
+        this.types = memory.get(TYPES);
+        this.parentCounts = memory.get(PARENT_COUNTS);
+        this.depths = memory.get(DEPTHS);
+        this.duplicates = memory.get(DUPLICATES);
+        this.iterations = memory.getIteration();
+        this.runtime = memory.getRuntime();
+    }
+
+    public static AtomAnalytics compute(JanusGraphSorage storage, int workers, boolean writeBack) throws Exception {
+
+        if (!storage.representation.edges) {
+            throw new IllegalArgumentException("Analytics require child edges, not " + storage.representation);
+        }
+
+        JanusGraph graph = storage.graph;
+        if (writeBack) {
+            makePropertyKeys(graph);
+        }
+
+        ComputerResult result = ((JanusGraphComputer) graph.compute())
+                .resultMode(writeBack ? JanusGraphComputer.ResultMode.PERSIST : JanusGraphComputer.ResultMode.NONE)
+                .workers(workers)
+                .program(new DepthProgram())
+                .mapReduce(new CountMapReduce<>(TYPES, 1,
+                        vertex -> vertex.label() + "." + vertex.value("type")))
+                .mapReduce(new CountMapReduce<>(PARENT_COUNTS, 1, vertex -> vertex.<Integer>value(PARENTS)))
+                .mapReduce(new CountMapReduce<>(DEPTHS, 1, vertex -> vertex.<Integer>value(DEPTH)))
+                .mapReduce(new CountMapReduce<>(DUPLICATES, 2, DepthProgram::getKey))
+                .submit().get();
+
+        return new AtomAnalytics(result.memory());
+    }
+
+    // written back concurrently by all workers, implicit creation would conflict
+    private static void makePropertyKeys(JanusGraph graph) {
+        JanusGraphManagement mgmt = graph.openManagement();
+        for (String key : new String[]{DEPTH, PARENTS}) {
+            if (!mgmt.containsPropertyKey(key)) {
+                mgmt.makePropertyKey(key).dataType(Integer.class).make();
+            }
+        }
+        mgmt.commit();
+    }
+
+    public SortedMap<String, Long> getTypes() {
+        return types;
+    }
+
+    public SortedMap<Integer, Long> getParentCounts() {
+        return parentCounts;
+    }
+
+    public SortedMap<Integer, Long> getDepths() {
+        return depths;
+    }
+
+    public SortedMap<String, Long> getDuplicates() {
+        return duplicates;
+    }
+
+    public void print() {
+        System.out.printf("iterations: %d, runtime: %dms%n", iterations, runtime);
+        System.out.println("types:");
+        types.forEach((type, count) -> System.out.printf("  %s: %d%n", type, count));
+        System.out.println("parents:");
+        parentCounts.forEach((parents, count) -> System.out.printf("  %d: %d%n", parents, count));
+        System.out.println("depths:");
+        depths.forEach((depth, count) -> System.out.printf("  %d: %d%n", depth, count));
+        System.out.printf("duplicates: %d%n", duplicates.size());
+        duplicates.forEach((key, count) -> System.out.printf("  %s: %d%n", key, count));
+    }
+
+    static boolean isAtom(Vertex vertex) {
+        String label = vertex.label();
+        return "Leaf".equals(label) || "Node".equals(label);
+    }
+
+    /**
+     * Children point to their parents, so a node's depth is known once the depths of all
+     * children arrived. Depths only grow, a vertex sends again whenever its depth grew.
+     */
+    static class DepthProgram implements VertexProgram<Integer> {
+
+        static final String CHANGED = "changed";
+
+        static final MemoryComputeKey<Boolean> CHANGED_KEY = MemoryComputeKey.of(CHANGED, Boolean::logicalOr, false, true);
+
+        static final MessageScope.Local<Integer> TO_PARENTS = MessageScope.Local.of(() -> __.outE());
+
+        // never sent to, loads the edges to the parents
+        static final MessageScope.Local<Integer> TO_CHILDREN = MessageScope.Local.of(() -> __.inE());
+
+        static final Set<MessageScope> SCOPES = new HashSet<>(Arrays.asList(TO_PARENTS, TO_CHILDREN));
+
+        static final Set<VertexComputeKey> VERTEX_KEYS = new HashSet<>(Arrays.asList(
+                VertexComputeKey.of(DEPTH, false),
+                VertexComputeKey.of(PARENTS, false)));
+
+        @Override
+        public void setup(Memory memory) {
+            memory.set(CHANGED, false);
+        }
+
+        @Override
+        public void execute(Vertex vertex, Messenger<Integer> messenger, Memory memory) {
+
+            if (!isAtom(vertex)) {
+                return;
+            }
+
+            boolean leaf = "Leaf".equals(vertex.label());
+
+            if (memory.isInitialIteration()) {
+                // a node is at least one above its children
+                int depth = leaf ? 0 : 1;
+                vertex.property(VertexProperty.Cardinality.single, DEPTH, depth);
+                messenger.sendMessage(TO_PARENTS, depth);
+                memory.add(CHANGED, true);
+                return;
+            }
+
+            // edges are loaded for the scopes of the previous iteration, none in the initial one
+            if (memory.getIteration() == 1) {
+                int parents = 0;
+                for (Iterator<Edge> edges = vertex.edges(Direction.OUT); edges.hasNext(); edges.next()) {
+                    parents++;
+                }
+                vertex.property(VertexProperty.Cardinality.single, PARENTS, parents);
+            }
+
+            int depth = vertex.value(DEPTH);
+            Iterator<Integer> messages = messenger.receiveMessages();
+            int received = -1;
+            while (messages.hasNext()) {
+                received = Math.max(received, messages.next());
+            }
+
+            if (!leaf && received + 1 > depth) {
+                vertex.property(VertexProperty.Cardinality.single, DEPTH, received + 1);
+                messenger.sendMessage(TO_PARENTS, received + 1);
+                memory.add(CHANGED, true);
+            }
+        }
+
+        // the key under which the storage finds the atom
+        static String getKey(Vertex vertex) {
+
+            if ("Leaf".equals(vertex.label())) {
+                return JanusGraphSorage.getLeafKey(vertex.value("type"), vertex.value("value"));
+            }
+
+            if (vertex.property("ids").isPresent()) {
+                return JanusGraphSorage.getNodeKey(vertex.value("type"), vertex.<long[]>value("ids"));
+            }
+
+            long[] ids = new long[vertex.<Integer>value("arity")];
+            for (Iterator<Edge> edges = vertex.edges(Direction.IN); edges.hasNext(); ) {
+                Edge edge = edges.next();
+                String label = edge.label();
+                ids[Integer.parseInt(label.substring(label.lastIndexOf('_') + 1))] = (long) edge.outVertex().id();
+            }
+            return JanusGraphSorage.getNodeKey(vertex.value("type"), ids);
+        }
+
+        @Override
+        public boolean terminate(Memory memory) {
+            boolean changed = memory.get(CHANGED);
+            memory.set(CHANGED, false);
+            return !changed;
+        }
+
+        @Override
+        public Set<VertexComputeKey> getVertexComputeKeys() {
+            return VERTEX_KEYS;
+        }
+
+        @Override
+        @SuppressWarnings("rawtypes") // declared raw by VertexProgram
+        public Set<MemoryComputeKey> getMemoryComputeKeys() {
+            return Collections.singleton(CHANGED_KEY);
+        }
+
+        @Override
+        public Optional<MessageCombiner<Integer>> getMessageCombiner() {
+            return Optional.of(Math::max);
+        }
+
+        @Override
+        public Set<MessageScope> getMessageScopes(Memory memory) {
+            return SCOPES;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public DepthProgram clone() {
+            return new DepthProgram();
+        }
+
+        @Override
+        public GraphComputer.ResultGraph getPreferredResultGraph() {
+            return GraphComputer.ResultGraph.ORIGINAL;
+        }
+
+        @Override
+        public GraphComputer.Persist getPreferredPersist() {
+            return GraphComputer.Persist.VERTEX_PROPERTIES;
+        }
+    }
+
+    /**
+     * Counts atoms by a key, keys counted less than the minimum are dropped.
+     */
+    static class CountMapReduce<K extends Comparable<K>> implements MapReduce<K, Long, K, Long, SortedMap<K, Long>> {
+
+        final String memoryKey;
+        final long minimum;
+        final Function<Vertex, K> key;
+
+        CountMapReduce(String memoryKey, long minimum, Function<Vertex, K> key) {
+            this.memoryKey = memoryKey;
+            this.minimum = minimum;
+            this.key = key;
+        }
+
+        @Override
+        public boolean doStage(Stage stage) {
+            return true;
+        }
+
+        @Override
+        public void map(Vertex vertex, MapEmitter<K, Long> emitter) {
+            if (isAtom(vertex)) {
+                emitter.emit(key.apply(vertex), 1L);
+            }
+        }
+
+        @Override
+        public void combine(K key, Iterator<Long> values, ReduceEmitter<K, Long> emitter) {
+            emitter.emit(key, sum(values));
+        }
+
+        @Override
+        public void reduce(K key, Iterator<Long> values, ReduceEmitter<K, Long> emitter) {
+            long count = sum(values);
+            if (count >= minimum) {
+                emitter.emit(key, count);
+            }
+        }
+
+        private static long sum(Iterator<Long> values) {
+            long sum = 0;
+            while (values.hasNext()) {
+                sum += values.next();
+            }
+            return sum;
+        }
+
+        @Override
+        public SortedMap<K, Long> generateFinalResult(Iterator<KeyValue<K, Long>> keyValues) {
+            SortedMap<K, Long> result = new TreeMap<>();
+            keyValues.forEachRemaining(keyValue -> result.put(keyValue.getKey(), keyValue.getValue()));
+            return result;
+        }
+
+        @Override
+        public String getMemoryKey() {
+            return memoryKey;
+        }
+
+        @Override
+        @SuppressWarnings("CloneDoesntCallSuperClone")
+        public CountMapReduce<K> clone() {
+            return new CountMapReduce<>(memoryKey, minimum, key);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Commit time uniqueness check for atoms created by concurrent writers.
+ * <p>
+ * Every writer remembers keys of atoms created in its transaction and claims them
+ * right before the commit. A key already claimed by another writer means that the same
+ * atom was created concurrently and the transaction has to be rolled back and retried.
+ * Claims of committed atoms are kept until all transactions started before the commit are finished.
+ * <p>
+ * Removing an atom claims it like creating it. A reference to an existing atom is a shared
+ * claim: references of several writers do not conflict with each other, only with a removal
+ * of the atom, so either the removal or the writers referencing the atom are rolled back.
+ */
+class AtomClaims {
+
+    private static final int CLEANUP_INTERVAL = 1024;
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+    private final Map<Writer, Long> active = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ThreadLocal<Writer> writer = ThreadLocal.withInitial(Writer::new);
+
+    void begin() {
+        Writer current = writer.get();
+        if (current.startedAt < 0) {
+            current.startedAt = sequence.get();
+            active.put(current, current.startedAt);
+        }
+    }
+
+    void check(String key) {
+        Writer current = writer.get();
+        Claim claim = claims.get(key);
+        if (claim != null && claim.owner != current && !isVisible(claim, current)) {
+            throw new AtomConflictException(key);
+        }
+    }
+
+    void created(String key) {
+        writer.get().created.add(key);
+    }
+
+    void removed(String key) {
+        writer.get().created.add(key);
+    }
+
+    void referenced(String key) {
+        writer.get().referenced.add(key);
+    }
+
+    void claim() {
+        Writer current = writer.get();
+        for (String key : current.created) {
+            Claim claim = new Claim(current);
+            Claim existing = claims.compute(key, (k, c) -> c == null || isVisible(c, current) ? claim : c);
+            if (existing == claim) {
+                current.claimed.add(claim);
+                current.claimedKeys.add(key);
+            } else if (existing.owner != current) {
+                throw new AtomConflictException(key);
+            }
+        }
+
+        for (String key : current.referenced) {
+            claims.compute(key, (k, existing) -> {
+                if (existing == null || isVisible(existing, current)) {
+                    existing = new Claim(null);
+                } else if (existing.owner == current) {
+                    return existing;
+                } else if (existing.owner != null) {
+                    throw new AtomConflictException(key);
+                }
+                existing.holders++;
+                current.shared.add(key);
+                return existing;
+            });
+        }
+    }
+
+    void committed() {
+        Writer current = writer.get();
+        long committedAt = sequence.incrementAndGet();
+        for (Claim claim : current.claimed) {
+            claim.committedAt = committedAt;
+        }
+        for (String key : current.shared) {
+            claims.computeIfPresent(key, (k, claim) -> {
+                claim.holders--;
+                claim.committedAt = Math.max(claim.committedAt, committedAt);
+                return claim;
+            });
+        }
+        end(current);
+
+        if (committedAt % CLEANUP_INTERVAL == 0) {
+            cleanup();
+        }
+    }
+
+    void rolledBack() {
+        Writer current = writer.get();
+        for (int i = 0; i < current.claimed.size(); i++) {
+            claims.remove(current.claimedKeys.get(i), current.claimed.get(i));
+        }
+        for (String key : current.shared) {
+            claims.computeIfPresent(key, (k, claim) -> --claim.holders == 0 && claim.committedAt < 0 ? null : claim);
+        }
+        end(current);
+    }
+
+    // committed before the transaction started, so the transaction saw the atom created or removed
+    private static boolean isVisible(Claim claim, Writer current) {
+        return claim.holders == 0 && claim.committedAt > 0 && claim.committedAt <= current.startedAt;
+    }
+
+    int size() {
+        return claims.size();
+    }
+
+    private void end(Writer current) {
+        active.remove(current);
+        current.startedAt = -1;
+        current.created.clear();
+        current.referenced.clear();
+        current.claimed.clear();
+        current.claimedKeys.clear();
+        current.shared.clear();
+    }
+
+    private void cleanup() {
+        long oldest = sequence.get();
+        for (long startedAt : active.values()) {
+            oldest = Math.min(oldest, startedAt);
+        }
+
+        // transactions started after the commit see committed atoms through the index
+        final long visibleAt = oldest;
+        // per key, so that a shared claim is not dropped while another writer joins it
+        for (String key : claims.keySet()) {
+            claims.computeIfPresent(key, (k, claim) ->
+                    claim.holders == 0 && claim.committedAt > 0 && claim.committedAt <= visibleAt ? null : claim);
+        }
+    }
+
+    static class Claim {
+        // null for a shared claim of references
+        final Writer owner;
+        volatile long committedAt = -1;
+        // writers with an uncommitted reference, only changed while the map holds the key
+        int holders;
+
+        Claim(Writer owner) {
+            this.owner = owner;
+        }
+    }
+
+    static class Writer {
+        long startedAt = -1;
+        final List<String> created = new ArrayList<>();
+        final List<String> referenced = new ArrayList<>();
+        final List<Claim> claimed = new ArrayList<>();
+        final List<String> claimedKeys = new ArrayList<>();
+        final List<String> shared = new ArrayList<>();
+    }
+
+    static class AtomConflictException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        AtomConflictException(String key) {
+            super(String.format("Atom is concurrently created, removed or referenced by another writer: %s", key));
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package sample;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyIterator;
+import org.janusgraph.diskstorage.keycolumnvalue.KeySliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.SliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.keycolumnvalue.inmemory.InMemoryKeyColumnValueStore;
+import org.janusgraph.diskstorage.util.BufferUtil;
+import org.janusgraph.diskstorage.util.RecordIterator;
+import org.janusgraph.diskstorage.util.StandardBaseTransactionConfig;
+import org.janusgraph.diskstorage.util.time.TimestampProviders;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bytes stored per atom, grouped by kind and arity.
+ * <p>
+ * Backend bytes are the serialized key, columns and values of the atom's row in the edge
+ * store, heap bytes the objects the store keeps for the rows as found by walking their object
+ * graph. Edges are stored in the rows of both their vertices. Composite index entries are
+ * not part of any row and are reported for their store as a whole.
+ * <p>
+ * Rows can share objects, e.g. the buffer a mutation was serialized into, so heap bytes are
+ * measured with one layout over all rows of a group, which counts every object once, and
+ * are only known per group, not per atom. A store is measured as one layout over the map
+ * holding its rows, including the nodes of the map. Heap bytes are only known for the
+ * inmemory and {@link CompactStoreManager} backends.
+ */
+public class AtomFootprint {
+
+    static final StaticBuffer SLICE_START = BufferUtil.zeroBuffer(1);
+    static final StaticBuffer SLICE_END = BufferUtil.oneBuffer(128);
+
+    final KeyColumnValueStoreManager manager;
+    final Map<String, Group> groups = new TreeMap<>();
+    final Map<String, Group> stores = new TreeMap<>();
+
+    public AtomFootprint(JanusGraph graph) {
+        this.manager = (KeyColumnValueStoreManager) ((StandardJanusGraph) graph).getBackend().getStoreManager();
+    }
+
+    /**
+     * Measures the row of the vertex with the given id, key is the serialized vertex id.
+     */
+    public void add(String group, StaticBuffer key) throws BackendException {
+        KeyColumnValueStore store = manager.openDatabase(Backend.EDGESTORE_NAME);
+        groups.computeIfAbsent(group, g -> new Group()).add(getRowBytes(key), key, getRow(store, key));
+    }
+
+    /**
+     * Returns the backend bytes of the row of the vertex with the given serialized id.
+     */
+    public long getRowBytes(StaticBuffer key) throws BackendException {
+        KeyColumnValueStore store = manager.openDatabase(Backend.EDGESTORE_NAME);
+        StoreTransaction tx = beginTransaction();
+        try {
+            long bytes = key.length();
+            for (Entry entry : store.getSlice(new KeySliceQuery(key, SLICE_START, SLICE_END), tx)) {
+                bytes += entry.length();
+            }
+            return bytes;
+        } finally {
+            tx.commit();
+        }
+    }
+
+    /**
+     * Measures all rows of the edge and composite index stores.
+     */
+    public void addStores() throws BackendException {
+        for (String name : new String[]{Backend.EDGESTORE_NAME, Backend.INDEXSTORE_NAME}) {
+            KeyColumnValueStore store = manager.openDatabase(name);
+            StoreTransaction tx = beginTransaction();
+            Group group = new Group();
+            Object rows = getRows(store);
+            group.heap = rows == null ? -1 : GraphLayout.parseInstance(rows).totalSize();
+            try (KeyIterator keys = store.getKeys(new SliceQuery(SLICE_START, SLICE_END), tx)) {
+                while (keys.hasNext()) {
+                    StaticBuffer key = keys.next();
+                    long bytes = key.length();
+                    // closing the entries of a row closes the inmemory key iterator as well
+                    RecordIterator<Entry> entries = keys.getEntries();
+                    while (entries.hasNext()) {
+                        bytes += entries.next().length();
+                    }
+                    group.add(bytes);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                tx.commit();
+            }
+            stores.put(name, group);
+        }
+    }
+
+    private StoreTransaction beginTransaction() throws BackendException {
+        return manager.beginTransaction(StandardBaseTransactionConfig.of(TimestampProviders.MICRO));
+    }
+
+    // null if the backend does not keep its rows in the heap
+    private static Object getRow(KeyColumnValueStore store, StaticBuffer key) {
+        Map<?, ?> rows = getRows(store);
+        return rows == null ? null : rows.get(key);
+    }
+
+    private static Map<?, ?> getRows(KeyColumnValueStore store) {
+
+        if (store instanceof CompactKeyColumnValueStore) {
+            return ((CompactKeyColumnValueStore) store).getRows();
+        }
+
+        if (store instanceof InMemoryKeyColumnValueStore) {
+            try {
+                Field field = InMemoryKeyColumnValueStore.class.getDeclaredField("kcv");
+                field.setAccessible(true);
+                return (Map<?, ?>) field.get(store);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unsupported JanusGraph version", e);
+            }
+        }
+        return null;
+    }
+
+    public Map<String, Group> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Prints the bytes per atom of every group and projects backend and heap size of the
+     * given number of atoms with the measured mix of kinds and arities.
+     */
+    public void print(String title, long plannedAtoms) {
+
+        Group atoms = new Group();
+        groups.values().forEach(atoms::merge);
+        groups.values().forEach(Group::measureHeap);
+        atoms.measureHeap();
+
+        System.out.printf("--- footprint: %s ---%n", title);
+        System.out.printf("%-12s %8s %7s %12s %10s %10s %12s%n",
+                "group", "atoms", "share", "backend(B)", "min", "max", "heap(B)");
+        groups.forEach((name, group) -> print(name, group, atoms.count));
+        print("all atoms", atoms, atoms.count);
+
+        // index entries and rows of other vertices, e.g. statistics, are charged to the atoms
+        long backend = 0;
+        long heap = 0;
+        for (Map.Entry<String, Group> store : stores.entrySet()) {
+            Group group = store.getValue();
+            System.out.printf("%-12s rows: %d, backend: %d B, heap: %d B, per atom: %.1f B backend, %.1f B heap%n",
+                    store.getKey(), group.count, group.bytes, group.heap,
+                    (double) group.bytes / atoms.count, (double) group.heap / atoms.count);
+            backend += group.bytes;
+            heap += group.heap;
+        }
+
+        if (atoms.count > 0) {
+            double backendPerAtom = stores.isEmpty() ? atoms.getBytes() : (double) backend / atoms.count;
+            double heapPerAtom = stores.isEmpty() ? atoms.getHeap() : (double) heap / atoms.count;
+            System.out.printf("planned atoms: %d, backend: %.2f GB, heap: %s%n", plannedAtoms,
+                    backendPerAtom * plannedAtoms / (1L << 30),
+                    heapPerAtom < 0 ? "-" : String.format("%.2f GB", heapPerAtom * plannedAtoms / (1L << 30)));
+        }
+    }
+
+    private static void print(String name, Group group, long atoms) {
+        System.out.printf("%-12s %8d %6.1f%% %12.1f %10d %10d %12s%n",
+                name, group.count, 100.0 * group.count / atoms, group.getBytes(), group.minBytes, group.maxBytes,
+                group.heap < 0 ? "-" : String.format("%.1f", group.getHeap()));
+    }
+
+    public static class Group {
+        long count;
+        long bytes;
+        long minBytes = Long.MAX_VALUE;
+        long maxBytes;
+        long heap;
+        // keys and rows of the atoms, null once a row without heap objects was added
+        List<Object> roots = new ArrayList<>();
+
+        void add(long bytes) {
+            count++;
+            this.bytes += bytes;
+            minBytes = Math.min(minBytes, bytes);
+            maxBytes = Math.max(maxBytes, bytes);
+        }
+
+        void add(long bytes, StaticBuffer key, Object row) {
+            add(bytes);
+            if (row == null) {
+                roots = null;
+            } else if (roots != null) {
+                roots.add(key);
+                roots.add(row);
+            }
+        }
+
+        void merge(Group group) {
+            count += group.count;
+            bytes += group.bytes;
+            minBytes = Math.min(minBytes, group.minBytes);
+            maxBytes = Math.max(maxBytes, group.maxBytes);
+            if (group.roots == null) {
+                roots = null;
+            } else if (roots != null) {
+                roots.addAll(group.roots);
+            }
+        }
+
+        // objects shared by rows of the group are counted once
+        void measureHeap() {
+            heap = roots == null ? -1 : GraphLayout.parseInstance(roots.toArray()).totalSize();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getBytes() {
+            return count == 0 ? 0 : (double) bytes / count;
+        }
+
+        public double getHeap() {
+            return count == 0 || heap < 0 ? -1 : (double) heap / count;
+        }
+    }
+}
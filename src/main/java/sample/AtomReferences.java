@@ -0,0 +1,49 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Orphan candidates of a storage for the {@link OrphanCollector}.
+ * <p>
+ * Released atoms become candidates once the releasing transaction committed. Writers do not
+ * wait for the collector: an atom found by a writer and removed by the collector before the
+ * writer's reference is committed is detected by the {@link AtomClaims} of the storage.
+ */
+class AtomReferences {
+
+    private final Queue<Long> candidates = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<List<Long>> released = ThreadLocal.withInitial(ArrayList::new);
+
+    void released(long id) {
+        released.get().add(id);
+    }
+
+    void committed() {
+        List<Long> current = released.get();
+        candidates.addAll(current);
+        current.clear();
+    }
+
+    void rolledBack() {
+        released.get().clear();
+    }
+
+    Long poll() {
+        return candidates.poll();
+    }
+
+    void offer(long id) {
+        candidates.add(id);
+    }
+
+    boolean hasCandidates() {
+        return !candidates.isEmpty();
+    }
+
+    int getCandidates() {
+        return candidates.size();
+    }
+}
@@ -0,0 +1,311 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.schema.JanusGraphManagement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Per kind, per type and per arity atom counters.
+ * <p>
+ * Creations are collected as pending deltas of the current transaction
+ * and are written to a statistics vertex right before the commit,
+ * so counters are persisted together with the atoms they describe.
+ * A committing writer borrows a statistics vertex (shard) from a pool and returns it after
+ * the commit, so concurrent writers never update the same vertex and there are at most as
+ * many shards as concurrent commits. The ids of all shards are kept in a registry vertex,
+ * which is updated in its own transaction when a shard is added and is found by the index.
+ */
+public class AtomStatistics {
+
+    public static final String LABEL = "Statistics";
+    public static final String NAME = "stats_name";
+    public static final String COUNTERS = "stats_counters";
+    public static final String LAST_ID = "stats_last_id";
+    public static final String SHARDS = "stats_shards";
+    public static final String INDEX = "statisticsIndex";
+
+    static final String ATOMS = "atoms";
+    static final String EDGES = "edges";
+    static final String KIND_PREFIX = "kind.";
+    static final String TYPE_PREFIX = "type.";
+    static final String ARITY_PREFIX = "arity.";
+
+    private static final String SHARD_PREFIX = "atoms-";
+    private static final String REGISTRY = "registry";
+
+    private final Map<String, Long> totals = new HashMap<>();
+    private long lastId;
+    private final Queue<Shard> shards = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Writer> writer = ThreadLocal.withInitial(Writer::new);
+
+    /**
+     * Creates the property keys of statistics vertices and the index they are found by.
+     */
+    public static void makeSchema(JanusGraphManagement mgmt) {
+        if (mgmt.getGraphIndex(INDEX) == null) {
+            mgmt.buildIndex(INDEX, Vertex.class)
+                    .indexOnly(mgmt.getOrCreateVertexLabel(LABEL))
+                    .addKey(mgmt.getOrCreatePropertyKey(NAME))
+                    .buildCompositeIndex();
+        }
+        mgmt.getOrCreatePropertyKey(COUNTERS);
+        mgmt.getOrCreatePropertyKey(LAST_ID);
+        mgmt.getOrCreatePropertyKey(SHARDS);
+    }
+
+    public synchronized void load(GraphTraversalSource g) {
+        totals.clear();
+        shards.clear();
+        lastId = 0;
+
+        Iterator<Vertex> registry = g.V().hasLabel(LABEL).has(NAME, REGISTRY);
+        if (!registry.hasNext()) {
+            return;
+        }
+
+        // a registered shard does not exist if the transaction which created it rolled back
+        for (long id : toIds(registry.next().value(SHARDS))) {
+            Iterator<Vertex> iter = g.V(id);
+            Shard shard = new Shard(id);
+            if (iter.hasNext()) {
+                Vertex v = iter.next();
+                lastId = Math.max(lastId, (long) v.property(LAST_ID).value());
+                shard.committed.putAll(fromString(v.property(COUNTERS).value().toString()));
+                merge(totals, shard.committed);
+            }
+            shards.add(shard);
+        }
+    }
+
+    public void leafCreated(String type) {
+        Map<String, Long> pending = writer.get().pending;
+        increment(pending, ATOMS, 1);
+        increment(pending, KIND_PREFIX + "Leaf", 1);
+        increment(pending, TYPE_PREFIX + type, 1);
+    }
+
+    public void nodeCreated(String type, int arity) {
+        Map<String, Long> pending = writer.get().pending;
+        increment(pending, ATOMS, 1);
+        increment(pending, KIND_PREFIX + "Node", 1);
+        increment(pending, TYPE_PREFIX + type, 1);
+        increment(pending, ARITY_PREFIX + arity, 1);
+    }
+
+    public void edgesCreated(int edges) {
+        increment(writer.get().pending, EDGES, edges);
+    }
+
+    public void leafDeleted(String type) {
+        Map<String, Long> pending = writer.get().pending;
+        increment(pending, ATOMS, -1);
+        increment(pending, KIND_PREFIX + "Leaf", -1);
+        increment(pending, TYPE_PREFIX + type, -1);
+    }
+
+    public void nodeDeleted(String type, int arity) {
+        Map<String, Long> pending = writer.get().pending;
+        increment(pending, ATOMS, -1);
+        increment(pending, KIND_PREFIX + "Node", -1);
+        increment(pending, TYPE_PREFIX + type, -1);
+        increment(pending, ARITY_PREFIX + arity, -1);
+    }
+
+    public void edgesDeleted(int edges) {
+        increment(writer.get().pending, EDGES, -edges);
+    }
+
+    /**
+     * Writes the counters of the current thread's shard merged with its pending deltas
+     * into the current transaction together with the last allocated custom id,
+     * so id allocation can be resumed after a restart.
+     */
+    public void prepareCommit(GraphTraversalSource g, LongSupplier idSupplier, LongSupplier lastId) {
+
+        Writer current = writer.get();
+        if (current.pending.isEmpty()) {
+            return;
+        }
+
+        if (current.shard == null) {
+            Shard shard = shards.poll();
+            current.shard = shard != null ? shard : new Shard(register(g, idSupplier));
+        }
+
+        Map<String, Long> merged = new HashMap<>(current.shard.committed);
+        merge(merged, current.pending);
+        String counters = toString(merged);
+
+        Iterator<Vertex> iter = g.V(current.shard.id);
+        if (iter.hasNext()) {
+            Vertex v = iter.next();
+            v.property(COUNTERS, counters);
+            v.property(LAST_ID, lastId.getAsLong());
+        } else {
+            g
+                    .addV(LABEL)
+                    .property(T.id, current.shard.id)
+                    .property(NAME, SHARD_PREFIX + current.shard.id)
+                    .property(COUNTERS, counters)
+                    .property(LAST_ID, lastId.getAsLong()).next();
+        }
+    }
+
+    // the registry is committed right away, so a shard is never lost by a concurrent update
+    private synchronized long register(GraphTraversalSource g, LongSupplier idSupplier) {
+
+        long id = idSupplier.getAsLong();
+        JanusGraphTransaction tx = ((JanusGraph) g.getGraph()).newTransaction();
+        try {
+            Iterator<Vertex> registry = tx.traversal().V().hasLabel(LABEL).has(NAME, REGISTRY);
+            if (registry.hasNext()) {
+                Vertex v = registry.next();
+                v.property(SHARDS, v.value(SHARDS) + ";" + id);
+            } else {
+                tx.traversal()
+                        .addV(LABEL)
+                        .property(T.id, idSupplier.getAsLong())
+                        .property(NAME, REGISTRY)
+                        .property(SHARDS, String.valueOf(id)).next();
+            }
+            tx.commit();
+        } catch (RuntimeException e) {
+            tx.rollback();
+            throw e;
+        }
+        return id;
+    }
+
+    public void committed() {
+        Writer current = writer.get();
+        if (current.shard != null) {
+            merge(current.shard.committed, current.pending);
+            shards.add(current.shard);
+            current.shard = null;
+        }
+        synchronized (this) {
+            merge(totals, current.pending);
+        }
+        current.pending.clear();
+    }
+
+    public void rolledBack() {
+        Writer current = writer.get();
+        if (current.shard != null) {
+            shards.add(current.shard);
+            current.shard = null;
+        }
+        current.pending.clear();
+    }
+
+    /**
+     * Returns the greatest custom id count recorded by a commit, zero for a new graph.
+     */
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    public synchronized long getAtoms() {
+        return get(totals, ATOMS);
+    }
+
+    public synchronized long getEdges() {
+        return get(totals, EDGES);
+    }
+
+    public synchronized long getKindCount(String kind) {
+        return get(totals, KIND_PREFIX + kind);
+    }
+
+    public synchronized long getTypeCount(String type) {
+        return get(totals, TYPE_PREFIX + type);
+    }
+
+    public synchronized long getArityCount(int arity) {
+        return get(totals, ARITY_PREFIX + arity);
+    }
+
+    public synchronized Map<String, Long> getCounters() {
+        return new TreeMap<>(totals);
+    }
+
+    public void print() {
+        Map<String, Long> counters = getCounters();
+        System.out.printf("atoms: %d, edges: %d%n", get(counters, ATOMS), get(counters, EDGES));
+        for (Map.Entry<String, Long> entry : counters.entrySet()) {
+            String key = entry.getKey();
+            if (!ATOMS.equals(key) && !EDGES.equals(key)) {
+                System.out.printf("  %s: %d%n", key, entry.getValue());
+            }
+        }
+    }
+
+    private static long get(Map<String, Long> counters, String key) {
+        Long value = counters.get(key);
+        return value == null ? 0 : value;
+    }
+
+    private static void increment(Map<String, Long> counters, String key, long delta) {
+        counters.merge(key, delta, Long::sum);
+    }
+
+    private static void merge(Map<String, Long> counters, Map<String, Long> deltas) {
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            increment(counters, entry.getKey(), entry.getValue());
+        }
+    }
+
+    static String toString(Map<String, Long> counters) {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> entry : new TreeMap<>(counters).entrySet()) {
+            builder.append(entry.getKey()).append('=').append(entry.getValue()).append(';');
+        }
+        return builder.toString();
+    }
+
+    static Map<String, Long> fromString(String str) {
+        Map<String, Long> counters = new HashMap<>();
+        for (String entry : str.split(";")) {
+            int index = entry.lastIndexOf('=');
+            if (index > 0) {
+                counters.put(entry.substring(0, index), Long.parseLong(entry.substring(index + 1)));
+            }
+        }
+        return counters;
+    }
+
+    private static List<Long> toIds(String str) {
+        List<Long> ids = new ArrayList<>();
+        for (String id : str.split(";")) {
+            ids.add(Long.parseLong(id));
+        }
+        return ids;
+    }
+
+    static class Shard {
+        final long id;
+        final Map<String, Long> committed = new HashMap<>();
+
+        Shard(long id) {
+            this.id = id;
+        }
+    }
+
+    static class Writer {
+        Shard shard;
+        final Map<String, Long> pending = new HashMap<>();
+    }
+}
@@ -0,0 +1,632 @@
+package sample;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Rolling local log of the atoms created and deleted by committed transactions.
+ * <p>
+ * A writer collects the atoms of its transaction in a {@link Batch} which is appended as one
+ * checksummed record after the graph transaction committed. Records carry a sequence number
+ * and the id counter of the storage, segments are named after the first sequence they can
+ * contain. A checkpoint appends the records of all full segments to the snapshot file and
+ * deletes them, so it costs as much as the changes since the previous checkpoint. The
+ * snapshot header holds the last sequence and the length it covers and is written last,
+ * a checkpoint interrupted by a crash is repeated from the old length. When the new records
+ * delete atoms, the checkpoint rewrites the snapshot instead, without the deleted atoms and
+ * their delete records, and replaces the old one once it is complete.
+ * <p>
+ * {@link #replay} reads the snapshot and then the remaining segments, a torn or corrupt
+ * record ends a segment. Files are read in chunks, so they are not limited to 2 GB.
+ * Children are always logged before their parents.
+ */
+public class ChangeLog implements Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+    static final String SNAPSHOT = "snapshot.log";
+    static final Pattern SEGMENT_NAME = Pattern.compile("changes-(\\d+)\\.log");
+    static final int HEADER_SIZE = 8;
+    static final int SNAPSHOT_HEADER_SIZE = 16;
+    static final int READ_BUFFER_SIZE = 1 << 20;
+    // changes per record of a rewritten snapshot
+    static final int COMPACTED_RECORD_SIZE = 4096;
+
+    static final byte LEAF = 1;
+    static final byte NODE = 2;
+    // a node whose children are atoms of the same storage
+    static final byte LINKED_NODE = 3;
+    static final byte DELETED = 4;
+
+    final Path directory;
+    final long segmentSize;
+    final boolean sync;
+
+    private FileChannel active;
+    private long sequence;
+
+    private long records;
+    private long bytes;
+    private int checkpoints;
+    private long checkpointBytes;
+    private long checkpointTime;
+
+    public ChangeLog(Path directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE, false);
+    }
+
+    /**
+     * @param sync force every record to disk before the commit returns
+     */
+    public ChangeLog(Path directory, long segmentSize, boolean sync) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.sync = sync;
+
+        Files.createDirectories(directory);
+        sequence = readSnapshotHeader(directory.resolve(SNAPSHOT))[0];
+
+        List<Long> segments = getSegments(directory);
+        for (long first : segments) {
+            sequence = Math.max(sequence, first - 1);
+        }
+
+        if (segments.isEmpty()) {
+            roll();
+        } else {
+            Path last = getSegmentPath(segments.get(segments.size() - 1));
+            long[] end = new long[1];
+            sequence = Math.max(sequence, read(last, 0, Long.MAX_VALUE, 0, end, null));
+            active = FileChannel.open(last, StandardOpenOption.WRITE);
+            // drops a torn record, appends continue after the last valid one
+            active.truncate(end[0]);
+            active.position(end[0]);
+        }
+    }
+
+    /**
+     * Appends the atoms of a committed transaction, counter is the id counter of the storage
+     * after the commit. Writers hold the lock of the log across their commit and the append,
+     * so records are in commit order.
+     */
+    public synchronized void append(Batch batch, long counter) throws IOException {
+
+        if (batch.count == 0) {
+            return;
+        }
+
+        ByteBuffer record = encode(++sequence, counter, batch);
+
+        if (active.position() > 0 && active.position() + record.limit() > segmentSize) {
+            active.force(false);
+            active.close();
+            roll();
+        }
+
+        while (record.hasRemaining()) {
+            active.write(record);
+        }
+        if (sync) {
+            active.force(false);
+        }
+
+        records++;
+        bytes += record.limit();
+        batch.clear();
+    }
+
+    private static ByteBuffer encode(long sequence, long counter, Batch batch) {
+
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + 20 + batch.buffer.size());
+        // position, limit and flip are called through Buffer, the covariant overrides of newer JDKs are missing on Java 8
+        ((Buffer) record).position(HEADER_SIZE);
+        record.putLong(sequence).putLong(counter).putInt(batch.count).put(batch.buffer.toByteArray());
+        ((Buffer) record).flip();
+
+        CRC32 crc = new CRC32();
+        ByteBuffer payload = record.duplicate();
+        ((Buffer) payload).position(HEADER_SIZE);
+        crc.update(payload);
+        record.putInt(0, record.limit() - HEADER_SIZE).putInt(4, (int) crc.getValue());
+        return record;
+    }
+
+    // the new segment can only contain sequences after the current one
+    private void roll() throws IOException {
+        active = FileChannel.open(getSegmentPath(sequence + 1), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Moves all records into the snapshot and returns the last sequence it covers.
+     */
+    public synchronized long checkpoint() throws IOException {
+
+        long time = System.nanoTime();
+        if (active.position() > 0) {
+            active.force(false);
+            active.close();
+            roll();
+        }
+
+        Path snapshot = directory.resolve(SNAPSHOT);
+        long[] header = readSnapshotHeader(snapshot);
+        long last = header[0];
+        long length = header[1];
+
+        List<Path> merged = new ArrayList<>();
+        Set<Long> deleted = new HashSet<>();
+        for (long first : getSegments(directory)) {
+            if (first <= sequence) {
+                Path path = getSegmentPath(first);
+                merged.add(path);
+                read(path, 0, Long.MAX_VALUE, last, new long[1], record -> Compactor.readChanges(record, change -> {
+                    if (change.isDeleted()) {
+                        deleted.add(change.id);
+                    }
+                }));
+            }
+        }
+
+        if (deleted.isEmpty()) {
+            last = appendToSnapshot(snapshot, last, length, merged);
+        } else {
+            last = rewriteSnapshot(snapshot, last, length, merged, deleted);
+        }
+
+        for (Path path : merged) {
+            Files.delete(path);
+        }
+
+        checkpoints++;
+        checkpointTime += System.nanoTime() - time;
+        return last;
+    }
+
+    private long appendToSnapshot(Path snapshot, long last, long length, List<Path> segments) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // anything after the covered length was appended by an interrupted checkpoint
+            channel.truncate(length);
+            channel.position(length);
+
+            for (Path path : segments) {
+                last = Math.max(last, read(path, 0, Long.MAX_VALUE, last, new long[1], record -> write(channel, record)));
+            }
+
+            long newLength = channel.position();
+            checkpointBytes += newLength - length;
+            writeSnapshotHeader(channel, last, newLength);
+        }
+        return last;
+    }
+
+    // the old snapshot stays valid until the new one replaces it
+    private long rewriteSnapshot(Path snapshot, long last, long length, List<Path> segments, Set<Long> deleted)
+            throws IOException {
+
+        Path rewritten = directory.resolve(SNAPSHOT + ".tmp");
+        try (FileChannel channel = FileChannel.open(rewritten, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.position(SNAPSHOT_HEADER_SIZE);
+
+            Compactor compactor = new Compactor(channel, deleted);
+            if (Files.exists(snapshot)) {
+                read(snapshot, SNAPSHOT_HEADER_SIZE, length, 0, new long[1], compactor);
+            }
+            for (Path path : segments) {
+                last = Math.max(last, read(path, 0, Long.MAX_VALUE, last, new long[1], compactor));
+            }
+            compactor.flush();
+
+            checkpointBytes += channel.position();
+            writeSnapshotHeader(channel, last, channel.position());
+        }
+        Files.move(rewritten, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return last;
+    }
+
+    private static void writeSnapshotHeader(FileChannel channel, long last, long length) throws IOException {
+        channel.force(false);
+        channel.write(ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE).putLong(0, last).putLong(8, length), 0);
+        channel.force(false);
+    }
+
+    private static void write(FileChannel channel, ByteBuffer record) {
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads all atoms of the snapshot and the segments in the order they were committed and
+     * returns the id counter of the last record.
+     */
+    public static long replay(Path directory, Consumer<Change> consumer) throws IOException {
+
+        long[] counter = new long[1];
+        Consumer<ByteBuffer> records = record -> counter[0] = Math.max(counter[0], Compactor.readChanges(record, consumer));
+
+        Path snapshot = directory.resolve(SNAPSHOT);
+        long last = 0;
+        if (Files.exists(snapshot)) {
+            long[] header = readSnapshotHeader(snapshot);
+            last = read(snapshot, SNAPSHOT_HEADER_SIZE, header[1], 0, new long[1], records);
+        }
+
+        for (long first : getSegments(directory)) {
+            last = Math.max(last, read(getSegmentPath(directory, first), 0, Long.MAX_VALUE, last, new long[1], records));
+        }
+        return counter[0];
+    }
+
+    // passes records with a sequence after the given one, returns the last sequence read
+    private static long read(Path path, long from, long to, long after, long[] end, Consumer<ByteBuffer> consumer)
+            throws IOException {
+
+        CRC32 crc = new CRC32();
+        long position = from;
+        long last = after;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = Math.min(channel.size(), to);
+            // holds the bytes of the file from the position on
+            ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+            ((Buffer) buffer).flip();
+
+            while (size - position >= HEADER_SIZE) {
+                buffer = fill(channel, buffer, position, HEADER_SIZE);
+                int start = buffer.position();
+                int length = buffer.getInt(start);
+                int checksum = buffer.getInt(start + 4);
+                if (length < 20 || length > size - position - HEADER_SIZE) {
+                    break;
+                }
+
+                buffer = fill(channel, buffer, position, HEADER_SIZE + length);
+                start = buffer.position();
+                ByteBuffer record = buffer.duplicate();
+                ((Buffer) record).position(start + HEADER_SIZE);
+                ((Buffer) record).limit(start + HEADER_SIZE + length);
+                crc.reset();
+                crc.update(record.duplicate());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+
+                long sequence = record.getLong(start + HEADER_SIZE);
+                if (sequence > last) {
+                    last = sequence;
+                    if (consumer != null) {
+                        ((Buffer) record).position(start);
+                        consumer.accept(record);
+                    }
+                }
+                ((Buffer) buffer).position(start + HEADER_SIZE + length);
+                position += HEADER_SIZE + length;
+            }
+        }
+
+        end[0] = position;
+        return last;
+    }
+
+    // makes the given number of bytes from the file position on available at the buffer position
+    private static ByteBuffer fill(FileChannel channel, ByteBuffer buffer, long position, int bytes) throws IOException {
+
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+
+        long next = position + buffer.remaining();
+        ByteBuffer target = buffer;
+        if (bytes > buffer.capacity()) {
+            target = ByteBuffer.allocate(bytes);
+            target.put(buffer);
+        } else {
+            buffer.compact();
+        }
+
+        while (target.position() < bytes) {
+            int read = channel.read(target, next);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at " + next);
+            }
+            next += read;
+        }
+        ((Buffer) target).flip();
+        return target;
+    }
+
+    // last sequence and covered length, the header of a missing snapshot is written on the first checkpoint
+    private static long[] readSnapshotHeader(Path snapshot) throws IOException {
+
+        if (!Files.exists(snapshot) || Files.size(snapshot) < SNAPSHOT_HEADER_SIZE) {
+            return new long[]{0, SNAPSHOT_HEADER_SIZE};
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+        }
+        long length = header.getLong(8);
+        return new long[]{header.getLong(0), length == 0 ? SNAPSHOT_HEADER_SIZE : length};
+    }
+
+    private static List<Long> getSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(path -> {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    segments.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        segments.sort(null);
+        return segments;
+    }
+
+    private Path getSegmentPath(long first) {
+        return getSegmentPath(directory, first);
+    }
+
+    private static Path getSegmentPath(Path directory, long first) {
+        return directory.resolve(String.format("changes-%016d.log", first));
+    }
+
+    /**
+     * Size of the segments written since the last checkpoint.
+     */
+    public long getPendingBytes() throws IOException {
+        long size = 0;
+        for (long first : getSegments(directory)) {
+            size += Files.size(getSegmentPath(first));
+        }
+        return size;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        active.force(false);
+        active.close();
+    }
+
+    public void printStatistics() {
+        System.out.printf("change log: records: %d, bytes: %d, checkpoints: %d, checkpointed bytes: %d, checkpoint time: %.2fms%n",
+                records, bytes, checkpoints, checkpointBytes, checkpointTime / 1e6);
+    }
+
+    /**
+     * Writes the records of a snapshot and the segments merged into it as few records
+     * without the atoms deleted since and without their delete records.
+     */
+    static class Compactor implements Consumer<ByteBuffer> {
+
+        final FileChannel channel;
+        final Set<Long> deleted;
+        final Set<Long> dropped = new HashSet<>();
+        final Batch batch = new Batch();
+        long sequence;
+        long counter;
+        long written;
+
+        Compactor(FileChannel channel, Set<Long> deleted) {
+            this.channel = channel;
+            this.deleted = deleted;
+        }
+
+        @Override
+        public void accept(ByteBuffer record) {
+            sequence = record.getLong(record.position() + HEADER_SIZE);
+            counter = Math.max(counter, readChanges(record, change -> {
+                if (change.isDeleted() ? !dropped.remove(change.id) : !deleted.contains(change.id)) {
+                    batch.add(change);
+                } else if (!change.isDeleted()) {
+                    dropped.add(change.id);
+                }
+            }));
+
+            if (batch.count >= COMPACTED_RECORD_SIZE) {
+                flush();
+            }
+        }
+
+        // the last record keeps the last sequence and the id counter even if all its atoms were dropped
+        void flush() {
+            if (sequence > written) {
+                write(channel, encode(sequence, counter, batch));
+                written = sequence;
+                batch.clear();
+            }
+        }
+
+        // passes the changes of a record, returns its id counter
+        static long readChanges(ByteBuffer record, Consumer<Change> consumer) {
+            ByteBuffer changes = record.duplicate();
+            ((Buffer) changes).position(record.position() + HEADER_SIZE + 8);
+            long counter = changes.getLong();
+            int count = changes.getInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(Change.read(changes));
+            }
+            return counter;
+        }
+    }
+
+    /**
+     * Atoms created and deleted by one transaction.
+     */
+    public static class Batch {
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(buffer);
+        int count;
+
+        public void leaf(long id, String type, String value) {
+            try {
+                out.writeByte(LEAF);
+                writeVarLong(out, id);
+                writeString(out, type);
+                writeString(out, value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count++;
+        }
+
+        public void node(long id, String type, int arity, boolean linked, long... ids) {
+            try {
+                out.writeByte(linked ? LINKED_NODE : NODE);
+                writeVarLong(out, id);
+                writeString(out, type);
+                writeVarLong(out, arity);
+                writeVarLong(out, ids.length);
+                for (long child : ids) {
+                    writeVarLong(out, child);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count++;
+        }
+
+        public void delete(long id) {
+            try {
+                out.writeByte(DELETED);
+                writeVarLong(out, id);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            count++;
+        }
+
+        void add(Change change) {
+            if (change.isDeleted()) {
+                delete(change.id);
+            } else if (change.isLeaf()) {
+                leaf(change.id, change.type, change.value);
+            } else {
+                node(change.id, change.type, change.arity, change.isLinked(), change.ids);
+            }
+        }
+
+        public boolean isEmpty() {
+            return count == 0;
+        }
+
+        public void clear() {
+            buffer.reset();
+            count = 0;
+        }
+
+        private static void writeString(DataOutputStream out, String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.write(bytes);
+        }
+
+        private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+            while ((value & ~0x7FL) != 0) {
+                out.writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.writeByte((int) value);
+        }
+    }
+
+    /**
+     * An atom read back from the log, leaves have a value, nodes the ids of their children,
+     * deleted atoms only an id.
+     */
+    public static class Change {
+        public final byte kind;
+        public final long id;
+        public final String type;
+        public final String value;
+        public final int arity;
+        public final long[] ids;
+
+        Change(byte kind, long id, String type, String value, int arity, long[] ids) {
+            this.kind = kind;
+            this.id = id;
+            this.type = type;
+            this.value = value;
+            this.arity = arity;
+            this.ids = ids;
+        }
+
+        public boolean isLeaf() {
+            return kind == LEAF;
+        }
+
+        public boolean isLinked() {
+            return kind == LINKED_NODE;
+        }
+
+        public boolean isDeleted() {
+            return kind == DELETED;
+        }
+
+        static Change read(ByteBuffer buffer) {
+            byte kind = buffer.get();
+            long id = readVarLong(buffer);
+            if (kind == DELETED) {
+                return new Change(kind, id, null, null, 0, null);
+            }
+
+            String type = readString(buffer);
+
+            if (kind == LEAF) {
+                return new Change(kind, id, type, readString(buffer), 0, null);
+            }
+
+            int arity = (int) readVarLong(buffer);
+            long[] ids = new long[(int) readVarLong(buffer)];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = readVarLong(buffer);
+            }
+            return new Change(kind, id, type, null, arity, ids);
+        }
+
+        private static long readVarLong(ByteBuffer buffer) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static String readString(ByteBuffer buffer) {
+            byte[] bytes = new byte[(int) readVarLong(buffer)];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
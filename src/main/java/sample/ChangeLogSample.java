@@ -0,0 +1,93 @@
+package sample;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Uploads the workload in growing steps into an in-memory storage with a {@link ChangeLog}
+ * and checkpoints after every step but the last, then recovers a new storage from the
+ * snapshot and the remaining log and compares it against a full re-ingest.
+ * <p>
+ * The generator produces the same elements for a prefix of its size, so every step only
+ * adds the atoms of its new elements.
+ */
+public class ChangeLogSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 4000;
+        String workload = "uniform";
+        int steps = 4;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            steps = Integer.parseInt(args[2]);
+        }
+
+        System.out.printf("elements: %d, workload: %s, steps: %d%n", N, workload, steps);
+
+        Path directory = Paths.get("target/changelog");
+        IdPlacementBenchmark.delete(directory);
+
+        long atoms;
+        long lastId;
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage();
+             ChangeLog log = new ChangeLog(directory, 1 << 20, false)) {
+
+            storage.setChangeLog(log);
+            System.out.printf("%-6s %9s %10s %14s %16s %14s%n",
+                    "step", "elements", "upload(ms)", "delta(KB)", "checkpoint(ms)", "snapshot(KB)");
+
+            for (int step = 1; step <= steps; step++) {
+                int elements = N * step / steps;
+                long time = System.nanoTime();
+                new DataGenerator(Workload.preset(workload), elements).upload(storage);
+                long uploadTime = System.nanoTime() - time;
+
+                long delta = log.getPendingBytes();
+                if (step < steps) {
+                    time = System.nanoTime();
+                    log.checkpoint();
+                    long checkpointTime = System.nanoTime() - time;
+                    System.out.printf("%-6d %9d %10.0f %14d %16.2f %14d%n", step, elements, uploadTime / 1e6,
+                            delta / 1024, checkpointTime / 1e6, Files.size(directory.resolve(ChangeLog.SNAPSHOT)) / 1024);
+                } else {
+                    System.out.printf("%-6d %9d %10.0f %14d %16s %14s%n", step, elements, uploadTime / 1e6,
+                            delta / 1024, "-", "-");
+                }
+            }
+
+            atoms = countAtoms(storage);
+            lastId = storage.currentId.get();
+            log.printStatistics();
+        }
+
+        long time = System.nanoTime();
+        try (JanusGraphSorage recovered = DataStorageSample.getInMemoryStorage()) {
+            long replayed = recovered.recover(directory);
+            long recoveryTime = System.nanoTime() - time;
+            System.out.printf("recovery: %.0fms, replayed: %d, atoms: %d, expected: %d, id counter: %d, before: %d%n",
+                    recoveryTime / 1e6, replayed, countAtoms(recovered), atoms, recovered.currentId.get(), lastId);
+        }
+
+        time = System.nanoTime();
+        try (JanusGraphSorage reingested = DataStorageSample.getInMemoryStorage()) {
+            new DataGenerator(Workload.preset(workload), N).upload(reingested);
+            System.out.printf("full re-ingest: %.0fms, atoms: %d%n", (System.nanoTime() - time) / 1e6, countAtoms(reingested));
+        }
+    }
+
+    private static long countAtoms(JanusGraphSorage storage) {
+        long atoms = storage.traversal().V().hasLabel("Leaf", "Node").count().next();
+        storage.rollback();
+        return atoms;
+    }
+}
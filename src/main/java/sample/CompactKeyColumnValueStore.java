@@ -0,0 +1,393 @@
+package sample;
+
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.EntryList;
+import org.janusgraph.diskstorage.EntryMetaData;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyIterator;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRangeQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.KeySliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.SliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.util.RecordIterator;
+import org.janusgraph.diskstorage.util.StaticArrayBuffer;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.janusgraph.diskstorage.util.StaticArrayEntryList;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.IntStream;
+
+/**
+ * Store of {@link CompactStoreManager}, rows are kept in a sorted map of immutable packed rows.
+ */
+class CompactKeyColumnValueStore implements KeyColumnValueStore {
+
+    private static final int LOCK_STRIPES = 64;
+
+    private final String name;
+    private final ConcurrentNavigableMap<StaticBuffer, Row> rows = new ConcurrentSkipListMap<>();
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    CompactKeyColumnValueStore(String name) {
+        this.name = name;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @Override
+    public EntryList getSlice(KeySliceQuery query, StoreTransaction txh) {
+        Row row = rows.get(query.getKey());
+        return row == null ? EntryList.EMPTY_LIST : row.getSlice(query);
+    }
+
+    @Override
+    public Map<StaticBuffer, EntryList> getSlice(List<StaticBuffer> keys, SliceQuery query, StoreTransaction txh) {
+        Map<StaticBuffer, EntryList> result = new HashMap<>(keys.size() * 2);
+        for (StaticBuffer key : keys) {
+            result.put(key, getSlice(new KeySliceQuery(key, query), txh));
+        }
+        return result;
+    }
+
+    @Override
+    public void mutate(StaticBuffer key, List<Entry> additions, List<StaticBuffer> deletions, StoreTransaction txh)
+            throws BackendException {
+        apply(key, additions, deletions);
+    }
+
+    void apply(StaticBuffer key, List<Entry> additions, List<StaticBuffer> deletions) {
+        synchronized (locks[(key.hashCode() & 0x7fffffff) % LOCK_STRIPES]) {
+            Row row = rows.get(key);
+            Row mutated = Row.mutate(row, additions, deletions);
+            if (mutated == null) {
+                if (row != null) {
+                    rows.remove(key);
+                }
+            } else {
+                // keys handed in may be views of larger buffers
+                rows.put(row == null ? StaticArrayBuffer.of(key.as(StaticBuffer.ARRAY_FACTORY)) : key, mutated);
+            }
+        }
+    }
+
+    @Override
+    public void acquireLock(StaticBuffer key, StaticBuffer column, StaticBuffer expectedValue, StoreTransaction txh) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public KeyIterator getKeys(KeyRangeQuery query, StoreTransaction txh) {
+        return new RowIterator(rows.subMap(query.getKeyStart(), query.getKeyEnd()).entrySet().iterator(), query);
+    }
+
+    @Override
+    public KeyIterator getKeys(SliceQuery query, StoreTransaction txh) {
+        return new RowIterator(rows.entrySet().iterator(), query);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    Row getRow(StaticBuffer key) {
+        return rows.get(key);
+    }
+
+    Iterable<Map.Entry<StaticBuffer, Row>> rows() {
+        return rows.entrySet();
+    }
+
+    Map<StaticBuffer, Row> getRows() {
+        return rows;
+    }
+
+    long getByteSize() {
+        long size = 0;
+        for (Row row : rows.values()) {
+            size += row.data.length + 4L * row.offsets.length;
+        }
+        return size;
+    }
+
+    void clear() {
+        rows.clear();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Columns and values of a row in column order. Column i occupies
+     * data[offsets[2i], offsets[2i+1]) and its value data[offsets[2i+1], offsets[2i+2]).
+     */
+    static final class Row {
+
+        final byte[] data;
+        final int[] offsets;
+
+        private Row(byte[] data, int[] offsets) {
+            this.data = data;
+            this.offsets = offsets;
+        }
+
+        int size() {
+            return offsets.length / 2;
+        }
+
+        EntryList getSlice(SliceQuery query) {
+            byte[] start = query.getSliceStart().as(StaticBuffer.ARRAY_FACTORY);
+            byte[] end = query.getSliceEnd().as(StaticBuffer.ARRAY_FACTORY);
+
+            int from = lowerBound(start);
+            int to = lowerBound(end);
+            if (query.hasLimit()) {
+                to = Math.min(to, from + query.getLimit());
+            }
+            if (from >= to) {
+                return EntryList.EMPTY_LIST;
+            }
+            return StaticArrayEntryList.ofStaticBuffer(IntStream.range(from, to).iterator(), new Getter(this));
+        }
+
+        // index of the first column which is not smaller than the given bound
+        int lowerBound(byte[] bound) {
+            int low = 0;
+            int high = size();
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compare(data, offsets[2 * middle], offsets[2 * middle + 1], bound, 0, bound.length) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        StaticBuffer column(int i) {
+            return new StaticArrayBuffer(data, offsets[2 * i], offsets[2 * i + 1]);
+        }
+
+        StaticBuffer value(int i) {
+            return new StaticArrayBuffer(data, offsets[2 * i + 1], offsets[2 * i + 2]);
+        }
+
+        /**
+         * Returns a new row with the deletions and then the additions applied, or null
+         * if no columns are left.
+         */
+        static Row mutate(Row row, List<Entry> additions, List<StaticBuffer> deletions) {
+
+            List<Entry> sortedAdditions = new ArrayList<>(additions);
+            sortedAdditions.sort(Comparator.comparing(Entry::getColumn));
+            List<StaticBuffer> sortedDeletions = new ArrayList<>(deletions);
+            sortedDeletions.sort(null);
+
+            int existing = row == null ? 0 : row.size();
+            Builder builder = new Builder(existing + sortedAdditions.size());
+
+            int i = 0;
+            int j = 0;
+            int d = 0;
+            while (i < existing || j < sortedAdditions.size()) {
+                int cmp;
+                if (i >= existing) {
+                    cmp = 1;
+                } else if (j >= sortedAdditions.size()) {
+                    cmp = -1;
+                } else {
+                    cmp = -sortedAdditions.get(j).getColumn().compareTo(row.column(i));
+                }
+
+                if (cmp < 0) {
+                    StaticBuffer column = row.column(i);
+                    while (d < sortedDeletions.size() && sortedDeletions.get(d).compareTo(column) < 0) {
+                        d++;
+                    }
+                    if (d >= sortedDeletions.size() || !sortedDeletions.get(d).equals(column)) {
+                        builder.add(row.data, row.offsets[2 * i], row.offsets[2 * i + 1], row.offsets[2 * i + 2]);
+                    }
+                    i++;
+                } else {
+                    // an addition replaces an existing column of the same name
+                    if (cmp == 0) {
+                        i++;
+                    }
+                    // the sort is stable, so the last addition of a column wins
+                    while (j + 1 < sortedAdditions.size()
+                            && sortedAdditions.get(j + 1).getColumn().equals(sortedAdditions.get(j).getColumn())) {
+                        j++;
+                    }
+                    Entry entry = sortedAdditions.get(j++);
+                    builder.add(entry.getColumn(), entry.getValue());
+                }
+            }
+            return builder.build();
+        }
+    }
+
+    static final class Builder {
+        byte[] data = new byte[64];
+        int[] offsets;
+        int size;
+        int position;
+
+        Builder(int capacity) {
+            offsets = new int[2 * capacity + 1];
+        }
+
+        void add(byte[] source, int columnStart, int valueStart, int end) {
+            offsets[2 * size] = position;
+            offsets[2 * size + 1] = position + valueStart - columnStart;
+            append(source, columnStart, end - columnStart);
+            size++;
+        }
+
+        void add(StaticBuffer column, StaticBuffer value) {
+            offsets[2 * size] = position;
+            column.as((array, offset, limit) -> append(array, offset, limit - offset));
+            offsets[2 * size + 1] = position;
+            value.as((array, offset, limit) -> append(array, offset, limit - offset));
+            size++;
+        }
+
+        private Void append(byte[] source, int offset, int length) {
+            if (position + length > data.length) {
+                byte[] grown = new byte[Math.max(data.length * 2, position + length)];
+                System.arraycopy(data, 0, grown, 0, position);
+                data = grown;
+            }
+            System.arraycopy(source, offset, data, position, length);
+            position += length;
+            return null;
+        }
+
+        Row build() {
+            if (size == 0) {
+                return null;
+            }
+            int[] packedOffsets = new int[2 * size + 1];
+            System.arraycopy(offsets, 0, packedOffsets, 0, 2 * size);
+            packedOffsets[2 * size] = position;
+
+            byte[] packedData = new byte[position];
+            System.arraycopy(data, 0, packedData, 0, position);
+            return new Row(packedData, packedOffsets);
+        }
+    }
+
+    static final class Getter implements StaticArrayEntry.GetColVal<Integer, StaticBuffer> {
+        final Row row;
+
+        Getter(Row row) {
+            this.row = row;
+        }
+
+        @Override
+        public StaticBuffer getColumn(Integer i) {
+            return row.column(i);
+        }
+
+        @Override
+        public StaticBuffer getValue(Integer i) {
+            return row.value(i);
+        }
+
+        @Override
+        public EntryMetaData[] getMetaSchema(Integer i) {
+            return StaticArrayEntry.EMPTY_SCHEMA;
+        }
+
+        @Override
+        public Object getMetaData(Integer i, EntryMetaData meta) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    static int compare(byte[] a, int aFrom, int aTo, byte[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[aFrom + i] & 0xff) - (b[bFrom + i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return (aTo - aFrom) - (bTo - bFrom);
+    }
+
+    // rows with an empty slice are skipped
+    static final class RowIterator implements KeyIterator {
+        final Iterator<Map.Entry<StaticBuffer, Row>> rows;
+        final SliceQuery query;
+        Map.Entry<StaticBuffer, Row> next;
+        EntryList current;
+        EntryList nextSlice;
+
+        RowIterator(Iterator<Map.Entry<StaticBuffer, Row>> rows, SliceQuery query) {
+            this.rows = rows;
+            this.query = query;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && rows.hasNext()) {
+                Map.Entry<StaticBuffer, Row> candidate = rows.next();
+                EntryList slice = candidate.getValue().getSlice(query);
+                if (!slice.isEmpty()) {
+                    next = candidate;
+                    nextSlice = slice;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public StaticBuffer next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            StaticBuffer key = next.getKey();
+            current = nextSlice;
+            next = null;
+            nextSlice = null;
+            return key;
+        }
+
+        @Override
+        public RecordIterator<Entry> getEntries() {
+            Iterator<Entry> entries = current.iterator();
+            return new RecordIterator<Entry>() {
+                @Override
+                public boolean hasNext() {
+                    return entries.hasNext();
+                }
+
+                @Override
+                public Entry next() {
+                    return entries.next();
+                }
+
+                @Override
+                public void close() {
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
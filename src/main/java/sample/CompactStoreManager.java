@@ -0,0 +1,116 @@
+package sample;
+
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.BaseTransactionConfig;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.StoreMetaData;
+import org.janusgraph.diskstorage.common.AbstractStoreTransaction;
+import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.diskstorage.keycolumnvalue.KCVMutation;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRange;
+import org.janusgraph.diskstorage.keycolumnvalue.StandardStoreFeatures;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreFeatures;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory storage backend which keeps all columns of a row packed in one byte array.
+ * <p>
+ * The built-in inmemory backend holds one entry object per column. Here a row is an
+ * immutable byte array of its sorted columns and values plus an int array of offsets,
+ * so a row costs three objects regardless of the number of columns. Mutations replace
+ * the row by a new copy under a striped lock, readers never lock.
+ * <p>
+ * Use with {@code storage.backend=sample.CompactStoreManager}.
+ */
+public class CompactStoreManager implements KeyColumnValueStoreManager {
+
+    private final Map<String, CompactKeyColumnValueStore> stores = new ConcurrentHashMap<>();
+    private final StoreFeatures features;
+
+    public CompactStoreManager() {
+        this(null);
+    }
+
+    public CompactStoreManager(Configuration configuration) {
+        features = new StandardStoreFeatures.Builder()
+                .orderedScan(true)
+                .unorderedScan(true)
+                .keyOrdered(true)
+                .persists(false)
+                .optimisticLocking(true)
+                .keyConsistent(GraphDatabaseConfiguration.buildGraphConfiguration())
+                .build();
+    }
+
+    @Override
+    public StoreTransaction beginTransaction(BaseTransactionConfig config) {
+        return new AbstractStoreTransaction(config) {
+        };
+    }
+
+    @Override
+    public KeyColumnValueStore openDatabase(String name, StoreMetaData.Container metaData) {
+        return stores.computeIfAbsent(name, CompactKeyColumnValueStore::new);
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<StaticBuffer, KCVMutation>> mutations, StoreTransaction txh) throws BackendException {
+        for (Map.Entry<String, Map<StaticBuffer, KCVMutation>> storeMutations : mutations.entrySet()) {
+            KeyColumnValueStore store = openDatabase(storeMutations.getKey(), null);
+            for (Map.Entry<StaticBuffer, KCVMutation> mutation : storeMutations.getValue().entrySet()) {
+                store.mutate(mutation.getKey(), mutation.getValue().getAdditions(), mutation.getValue().getDeletions(), txh);
+            }
+        }
+    }
+
+    /**
+     * Bytes held by the packed rows of all stores, not counting the row index.
+     */
+    public long getByteSize() {
+        long size = 0;
+        for (CompactKeyColumnValueStore store : stores.values()) {
+            size += store.getByteSize();
+        }
+        return size;
+    }
+
+    @Override
+    public void close() {
+        stores.clear();
+    }
+
+    @Override
+    public void clearStorage() {
+        for (CompactKeyColumnValueStore store : stores.values()) {
+            store.clear();
+        }
+        stores.clear();
+    }
+
+    @Override
+    public boolean exists() {
+        return !stores.isEmpty();
+    }
+
+    @Override
+    public StoreFeatures getFeatures() {
+        return features;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName();
+    }
+
+    @Override
+    public List<KeyRange> getLocalKeyPartition() {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -0,0 +1,125 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs units of work against a concurrent {@link JanusGraphSorage} with optimistic retries.
+ * <p>
+ * A unit which lost a race for an atom is rolled back and executed again after a bounded
+ * randomized backoff, so the next attempt finds the winner's vertex through the index.
+ */
+public class ConcurrentUpsert {
+
+    final JanusGraphSorage storage;
+    final int maxRetries;
+    final long maxBackoffMillis;
+
+    final LongAdder attempts = new LongAdder();
+    final LongAdder commits = new LongAdder();
+    final LongAdder conflicts = new LongAdder();
+    final LongAdder retries = new LongAdder();
+    final LongAdder failures = new LongAdder();
+
+    public ConcurrentUpsert(JanusGraphSorage storage) {
+        this(storage, 32, 20);
+    }
+
+    public ConcurrentUpsert(JanusGraphSorage storage, int maxRetries, long maxBackoffMillis) {
+        if (!storage.isConcurrent()) {
+            throw new IllegalArgumentException("Storage is not opened in concurrent mode");
+        }
+        this.storage = storage;
+        this.maxRetries = maxRetries;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public JanusGraphSorage getStorage() {
+        return storage;
+    }
+
+    public <T> T execute(Function<GraphTraversalSource, T> work) {
+        return execute(work, nanos -> {
+        });
+    }
+
+    /**
+     * Executes the work and passes the duration of the successful commit to the listener.
+     */
+    public <T> T execute(Function<GraphTraversalSource, T> work, LongConsumer commitTime) {
+
+        for (int attempt = 0; ; attempt++) {
+            attempts.increment();
+            try {
+                T result = work.apply(storage.traversal());
+                long time = System.nanoTime();
+                storage.commit();
+                commitTime.accept(System.nanoTime() - time);
+                commits.increment();
+                return result;
+            } catch (AtomClaims.AtomConflictException e) {
+                storage.rollback();
+                conflicts.increment();
+
+                if (attempt >= maxRetries) {
+                    failures.increment();
+                    throw e;
+                }
+
+                retries.increment();
+                backoff(attempt);
+            } catch (RuntimeException e) {
+                storage.rollback();
+                throw e;
+            }
+        }
+    }
+
+    private void backoff(int attempt) {
+        long bound = Math.min(maxBackoffMillis, 1L << Math.min(attempt, 16));
+        long millis = ThreadLocalRandom.current().nextLong(bound + 1);
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public long getCommits() {
+        return commits.sum();
+    }
+
+    public long getConflicts() {
+        return conflicts.sum();
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    public double getConflictRate() {
+        long total = attempts.sum();
+        return total == 0 ? 0 : (double) conflicts.sum() / total;
+    }
+
+    public double getRetryRate() {
+        long total = commits.sum() + failures.sum();
+        return total == 0 ? 0 : (double) retries.sum() / total;
+    }
+
+    public void printStatistics() {
+        System.out.printf("attempts: %d, commits: %d, conflicts: %d, retries: %d, failures: %d" +
+                        ", conflict rate: %.4f, retry rate: %.4f%n",
+                attempts.sum(), getCommits(), getConflicts(), getRetries(), getFailures(),
+                getConflictRate(), getRetryRate());
+    }
+}
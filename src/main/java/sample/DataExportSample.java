@@ -0,0 +1,26 @@
+package sample;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class DataExportSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 10;
+        Path file = Paths.get("target/atoms.txt");
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            file = Paths.get(args[1]);
+        }
+
+        DataGenerator generator = new DataGenerator(3, 3, 3, 3, N);
+        generator.export(file);
+
+        System.out.printf("elements: %d, file: %s%n", N, file);
+    }
+}
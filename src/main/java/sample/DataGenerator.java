@@ -3,38 +3,113 @@ package sample;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Random;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class DataGenerator {
 
+    static final int MAX_REUSE_WINDOW = 1024;
+    static final int CHUNK_SIZE = 1024;
+
     final int maxTypes;
     final int maxValues;
     final int maxWidth;
     final int maxHeight;
     final int elements;
-    final Random random = new Random(42);
+    final long seed;
 
+    final Workload workload;
+    final Workload.Zipf types;
+    final Workload.Zipf values;
+    final Workload.Zipf widths;
+    final Workload.Zipf recency;
     final List<DataNode> dataNodes;
 
     public DataGenerator(int maxTypes, int maxValues, int maxWidth, int maxHeight, int elements) {
-        this.maxTypes = maxTypes;
-        this.maxValues = maxValues;
-        this.maxWidth = maxWidth;
-        this.maxHeight = maxHeight;
+        this(Workload.uniform("uniform", maxTypes, maxValues, maxWidth, maxHeight), elements);
+    }
+
+    public DataGenerator(Workload workload, int elements) {
+        this(workload, elements, 42, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Generates the same data for the same seed regardless of the number of threads.
+     */
+    public DataGenerator(Workload workload, int elements, long seed, int threads) {
+        this.workload = workload;
+        this.seed = seed;
+        this.maxTypes = workload.types;
+        this.maxValues = workload.values;
+        this.maxWidth = workload.maxWidth;
+        this.maxHeight = workload.maxHeight;
         this.elements = elements;
+        this.types = new Workload.Zipf(workload.types, workload.typeSkew);
+        this.values = new Workload.Zipf(workload.values, workload.valueSkew);
+        this.widths = new Workload.Zipf(workload.maxWidth, workload.widthSkew);
+        this.recency = new Workload.Zipf(MAX_REUSE_WINDOW, workload.reuseSkew);
         this.dataNodes = new ArrayList<>(elements);
 
-        init();
+        init(threads);
     }
 
-    private void init() {
-        for (int i = 0; i < elements; i++) {
-            dataNodes.add(generateNode(maxWidth, maxHeight));
+    // chunks are generated in parallel, the elements of a chunk in order since they
+    // share the chunk's pool of reusable subtrees
+    private void init(int threads) {
+
+        int chunks = (elements + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<List<DataNode>> generatedChunks = pool.submit(() -> IntStream.range(0, chunks)
+                    .parallel()
+                    .mapToObj(this::generateChunk)
+                    .collect(Collectors.toList())).get();
+
+            for (List<DataNode> chunk : generatedChunks) {
+                dataNodes.addAll(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
         }
     }
 
+    private List<DataNode> generateChunk(int index) {
+
+        Chunk chunk = new Chunk(maxHeight);
+        int from = index * CHUNK_SIZE;
+        int to = Math.min(from + CHUNK_SIZE, elements);
+
+        List<DataNode> nodes = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            chunk.random = new SplittableRandom(elementSeed(seed, i));
+            nodes.add(generateNode(chunk, maxWidth, maxHeight));
+        }
+        return nodes;
+    }
+
     public void upload(JanusGraphSorage storage) {
 
         GraphTraversalSource g = storage.traversal();
@@ -57,7 +132,136 @@ public class DataGenerator {
         commits++;
         System.out.printf("commits: %d%n", commits);
 
-        storage.printStatistics(g);
+        storage.printStatistics();
+    }
+
+    public void upload(ConcurrentUpsert upsert, int writers) throws Exception {
+
+        // small batches keep the amount of work lost on a conflict low
+        final int maxCommitItereations = 10;
+        JanusGraphSorage storage = upsert.getStorage();
+        AtomicInteger next = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        try {
+            List<Future<?>> futures = new ArrayList<>(writers);
+            for (int i = 0; i < writers; i++) {
+                futures.add(executor.submit(() -> {
+                    int from;
+                    while ((from = next.getAndAdd(maxCommitItereations)) < dataNodes.size()) {
+                        List<DataNode> batch = dataNodes.subList(from, Math.min(from + maxCommitItereations, dataNodes.size()));
+                        upsert.execute(g -> {
+                            for (DataNode node : batch) {
+                                upload(storage, g, node);
+                            }
+                            return null;
+                        });
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        System.out.printf("writers: %d%n", writers);
+        upsert.printStatistics();
+        storage.printStatistics();
+    }
+
+    public void upload(WriteBehindBuffer buffer) {
+
+        for (DataNode node : dataNodes) {
+            upload(buffer, node);
+        }
+        buffer.flush();
+
+        buffer.printStatistics();
+        buffer.storage.printStatistics();
+    }
+
+    private static long upload(WriteBehindBuffer buffer, DataNode node) {
+
+        if (node.isLeaf()) {
+            return buffer.getLeaf(node.type, node.value);
+        }
+
+        long[] ids = new long[node.children.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = upload(buffer, node.children[i]);
+        }
+
+        return buffer.getNode(node.type, ids);
+    }
+
+    public void upload(IngestionPipeline pipeline) throws InterruptedException {
+        pipeline.run(dataNodes.iterator());
+        pipeline.printStatistics();
+        pipeline.storage.printStatistics();
+    }
+
+    public void upload(ShardedStorage storage) {
+
+        final int maxCommitItereations = 100;
+        int commits = 0;
+
+        for (int from = 0; from < dataNodes.size(); from += maxCommitItereations) {
+            upload(storage, dataNodes.subList(from, Math.min(from + maxCommitItereations, dataNodes.size())));
+            storage.commit();
+            commits++;
+        }
+
+        System.out.printf("commits: %d%n", commits);
+
+        storage.printStatistics();
+    }
+
+    // atoms of the same height do not depend on each other and are resolved by all shards at once
+    private void upload(ShardedStorage storage, List<DataNode> nodes) {
+
+        List<List<DataNode>> levels = new ArrayList<>();
+        for (DataNode node : nodes) {
+            addByHeight(node, levels);
+        }
+
+        Map<DataNode, ShardedStorage.Ref> refs = new IdentityHashMap<>();
+
+        for (List<DataNode> level : levels) {
+            List<ShardedStorage.AtomKey> keys = new ArrayList<>(level.size());
+            for (DataNode node : level) {
+                if (node.isLeaf()) {
+                    keys.add(ShardedStorage.AtomKey.leaf(node.type, node.value));
+                } else {
+                    ShardedStorage.Ref[] children = new ShardedStorage.Ref[node.children.length];
+                    for (int i = 0; i < children.length; i++) {
+                        children[i] = refs.get(node.children[i]);
+                    }
+                    keys.add(ShardedStorage.AtomKey.node(node.type, children));
+                }
+            }
+
+            ShardedStorage.Ref[] resolved = storage.getAtoms(keys);
+            for (int i = 0; i < resolved.length; i++) {
+                refs.put(level.get(i), resolved[i]);
+            }
+        }
+    }
+
+    private static int addByHeight(DataNode node, List<List<DataNode>> levels) {
+
+        int height = 0;
+        for (DataNode child : node.children) {
+            height = Math.max(height, addByHeight(child, levels) + 1);
+        }
+
+        while (levels.size() <= height) {
+            levels.add(new ArrayList<>());
+        }
+        levels.get(height).add(node);
+
+        return height;
     }
 
     private Vertex upload(JanusGraphSorage storage, GraphTraversalSource g, DataNode node) {
@@ -77,40 +281,113 @@ public class DataGenerator {
     }
 
 
-    private DataNode generateNode(int width, int depth) {
+    private DataNode generateNode(Chunk chunk, int width, int depth) {
+
+        SplittableRandom random = chunk.random;
 
         if (depth == 0) {
-            return new DataNode(getLeafType(), getValue());
+            return new DataNode(getLeafType(random), getValue(random));
         }
 
-        int currentWidth = random.nextInt(width) + 1;
+        int currentWidth = widths.sample(random, width) + 1;
         int currentDepth = random.nextInt(depth) + 1;
 
 
         DataNode[] children = new DataNode[currentWidth];
 
         for (int i = 0; i < currentWidth; i++) {
-            children[i] = generateNode(currentWidth, currentDepth - 1);
+            children[i] = generateChild(chunk, currentWidth, currentDepth - 1);
+        }
+
+        return new DataNode(getNodeType(random), children);
+    }
+
+    private DataNode generateChild(Chunk chunk, int width, int depth) {
+
+        if (workload.reuse == 0) {
+            return generateNode(chunk, width, depth);
+        }
+
+        List<DataNode> candidates = chunk.generated.get(depth);
+        if (!candidates.isEmpty() && chunk.random.nextDouble() < workload.reuse) {
+            int window = Math.min(candidates.size(), MAX_REUSE_WINDOW);
+            return candidates.get(candidates.size() - 1 - recency.sample(chunk.random, window));
         }
 
-        return new DataNode(getNodeType(), children);
+        DataNode node = generateNode(chunk, width, depth);
+        candidates.add(node);
+        return node;
+    }
+
+
+    private String getLeafType(SplittableRandom random) {
+        return withRandomPostfix(random, "Leaf", types);
+    }
+
+    private String getNodeType(SplittableRandom random) {
+        return withRandomPostfix(random, "Node", types);
     }
 
+    private String getValue(SplittableRandom random) {
+        return withRandomPostfix(random, "Value", values);
+    }
+
+    private static String withRandomPostfix(SplittableRandom random, String name, Workload.Zipf distribution) {
+        return String.format("%s%d", name, distribution.sample(random));
+    }
 
-    private String getLeafType() {
-        return withRandomPostfix("Leaf");
+    // seed of an element's random stream: the element-th output of a SplittableRandom seeded
+    // with the master seed, computable without generating the preceding elements
+    static long elementSeed(long seed, int element) {
+        long z = seed + (element + 1) * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
     }
 
-    private String getNodeType() {
-        return withRandomPostfix("Node");
+    /**
+     * Prints how many atoms the upload resolves and how many of them are distinct,
+     * i.e. the dedup hit ratio the storage will see.
+     */
+    public void printWorkloadStatistics() {
+
+        Map<String, Integer> distinct = new HashMap<>();
+        long[] atoms = new long[1];
+
+        for (DataNode node : dataNodes) {
+            count(node, distinct, atoms);
+        }
+
+        System.out.printf("workload: %s%n", workload);
+        System.out.printf("atoms: %d, distinct: %d, dedup hit ratio: %.4f%n",
+                atoms[0], distinct.size(), atoms[0] == 0 ? 0 : 1 - (double) distinct.size() / atoms[0]);
     }
 
-    private String getValue() {
-        return withRandomPostfix("Value");
+    // returns a dense id of the atom's content so that parent keys stay short
+    private static int count(DataNode node, Map<String, Integer> distinct, long[] atoms) {
+
+        atoms[0]++;
+
+        String key;
+        if (node.isLeaf()) {
+            key = "Leaf:" + node.type + ":" + node.value;
+        } else {
+            StringBuilder builder = new StringBuilder("Node:").append(node.type);
+            for (DataNode child : node.children) {
+                builder.append(':').append(count(child, distinct, atoms));
+            }
+            key = builder.toString();
+        }
+
+        return distinct.computeIfAbsent(key, k -> distinct.size());
     }
 
-    private String withRandomPostfix(String name) {
-        return String.format("%s%d", name, random.nextInt(maxTypes));
+    public void export(Path file) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (DataNode node : dataNodes) {
+                writer.write(node.toString());
+            }
+        }
     }
 
     public void dump() {
@@ -123,6 +400,19 @@ public class DataGenerator {
     }
 
 
+    static class Chunk {
+        // subtrees available for reuse by the depth they were generated for
+        final List<List<DataNode>> generated = new ArrayList<>();
+        // stream of the element being generated
+        SplittableRandom random;
+
+        Chunk(int maxHeight) {
+            for (int i = 0; i <= maxHeight; i++) {
+                generated.add(new ArrayList<>());
+            }
+        }
+    }
+
     static class DataNode {
         final String type;
         final String value;
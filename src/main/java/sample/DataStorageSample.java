@@ -10,36 +10,57 @@ public class DataStorageSample {
     public static void main(String[] args) throws Exception {
 
         int N = 10;
+        int writers = 1;
+        String workload = "uniform";
 
         if (args.length > 0) {
             N = Integer.parseInt(args[0]);
         }
 
+        if (args.length > 1) {
+            writers = Integer.parseInt(args[1]);
+        }
+
+        if (args.length > 2) {
+            workload = args[2];
+        }
+
         System.out.printf("elements: %d%n", N);
 
         //waitForProfiler("start profiler and press enter");
         long time = System.currentTimeMillis();
-        try (JanusGraphSorage storage = getInMemoryStorage()) {
+        try (JanusGraphSorage storage = getInMemoryStorage(writers > 1)) {
 
-            DataGenerator generator = new DataGenerator(3, 3, 3, 3, N);
+            DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
             //generator.dump();
+            generator.printWorkloadStatistics();
 
-            generator.upload(storage);
+            if (writers > 1) {
+                generator.upload(new ConcurrentUpsert(storage), writers);
+            } else {
+                generator.upload(storage);
+            }
         }
 
         System.out.printf("elapsed time: %dms%n", System.currentTimeMillis() - time);
     }
 
     public static JanusGraphSorage getInMemoryStorage() {
+        return getInMemoryStorage(false);
+    }
+
+    public static JanusGraphSorage getInMemoryStorage(boolean concurrent) {
         JanusGraph graph = JanusGraphFactory.build()
                 .set("storage.backend", "inmemory")
                 .set("graph.set-vertex-id", "true")
                 .set("ids.block-size", "100000")
                 .set("ids.authority.wait-time", "5")
                 .set("ids.renew-timeout", "50")
+                // removing a vertex takes a lock, which waits this long on commit, the default is meant for several processes
+                .set("storage.lock.wait-time", "1")
                 //.set("query.force-index", true)
                 .open();
-        return new JanusGraphSorage(graph);
+        return new JanusGraphSorage(graph, concurrent);
     }
 
     public static void waitForProfiler(String msg) {
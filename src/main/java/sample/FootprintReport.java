@@ -0,0 +1,73 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+
+import java.util.List;
+
+/**
+ * Loads the generated workload once per link representation and reports backend and heap
+ * bytes per leaf and per node of every arity with {@link AtomFootprint}, together with the
+ * size of a planned number of atoms.
+ * <p>
+ * Supported backends for heap sizes are inmemory and sample.CompactStoreManager.
+ */
+public class FootprintReport {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        long plannedAtoms = 100_000_000;
+        String backend = "inmemory";
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            plannedAtoms = Long.parseLong(args[2]);
+        }
+
+        if (args.length > 3) {
+            backend = args[3];
+        }
+
+        System.out.printf("elements: %d, workload: %s, backend: %s%n", N, workload, backend);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        for (LinkRepresentation representation : LinkRepresentation.values()) {
+            try (JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend), false,
+                    IdPlacement.SEQUENTIAL, representation)) {
+                generator.upload(storage);
+
+                AtomFootprint footprint = new AtomFootprint(storage.graph);
+                List<Vertex> atoms = storage.traversal().V().hasLabel("Leaf", "Node").toList();
+                for (Vertex atom : atoms) {
+                    String group = "Leaf".equals(atom.label()) ? "Leaf" : "Node/" + atom.<Integer>value("arity");
+                    footprint.add(group, storage.idManager.getKey((long) atom.id()));
+                }
+                storage.rollback();
+                footprint.addStores();
+
+                footprint.print(representation + ", " + backend, plannedAtoms);
+            }
+        }
+    }
+
+    private static JanusGraph getGraph(String backend) {
+        return JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000")
+                .set("ids.authority.wait-time", "5")
+                .set("ids.renew-timeout", "10000")
+                .open();
+    }
+}
@@ -0,0 +1,183 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.structure.T;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.idmanagement.IDManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sweeps the id allocation settings the samples tune by hand and reports, per thread count
+ * and for auto assigned as well as custom vertex ids, insert throughput, id block
+ * acquisitions and insert stalls measured with {@link IdBlockMonitor}.
+ * <p>
+ * Settings are varied one at a time from a baseline, custom vertex ids still take the ids
+ * of properties and edges from the id blocks.
+ */
+public class IdBlockBenchmark {
+
+    static final int TRANSACTION_SIZE = 100;
+    static final long STALL_THRESHOLD = 5;
+
+    static final Settings BASELINE = new Settings(100000, 0.3, 10000, 5);
+
+    public static void main(String[] args) throws Exception {
+
+        int vertices = 20000;
+        int maxThreads = 4;
+
+        if (args.length > 0) {
+            vertices = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            maxThreads = Integer.parseInt(args[1]);
+        }
+
+        List<Settings> sweep = new ArrayList<>();
+        sweep.add(BASELINE);
+        sweep.add(new Settings(1000, BASELINE.renewPercentage, BASELINE.renewTimeout, BASELINE.waitTime));
+        sweep.add(new Settings(1000000000, BASELINE.renewPercentage, BASELINE.renewTimeout, BASELINE.waitTime));
+        sweep.add(new Settings(BASELINE.blockSize, 0.05, BASELINE.renewTimeout, BASELINE.waitTime));
+        sweep.add(new Settings(BASELINE.blockSize, 0.9, BASELINE.renewTimeout, BASELINE.waitTime));
+        sweep.add(new Settings(BASELINE.blockSize, BASELINE.renewPercentage, 50, BASELINE.waitTime));
+        sweep.add(new Settings(BASELINE.blockSize, BASELINE.renewPercentage, BASELINE.renewTimeout, 50));
+
+        System.out.printf("vertices: %d, max threads: %d, stall threshold: %dms%n", vertices, maxThreads, STALL_THRESHOLD);
+        System.out.printf("%-6s %7s %10s %6s %8s %6s %10s %7s %8s %9s %9s %9s %9s %7s %8s %7s%n",
+                "ids", "threads", "block", "renew", "timeout", "wait", "inserts/s", "blocks", "renewals", "acq(ms)", "acqmax(ms)",
+                "p99(ms)", "max(ms)", "stalls", "renewal", "failed");
+
+        for (boolean customIds : new boolean[]{false, true}) {
+            for (Settings settings : sweep) {
+                for (int threads = 1; threads <= maxThreads; threads *= 2) {
+                    run(settings, customIds, threads, vertices);
+                }
+            }
+        }
+    }
+
+    private static void run(Settings settings, boolean customIds, int threads, int vertices) throws Exception {
+
+        JanusGraph graph = settings.open(customIds);
+        try {
+            IdBlockMonitor monitor = IdBlockMonitor.install(graph, STALL_THRESHOLD, TimeUnit.MILLISECONDS);
+            makeSchema(graph);
+            IDManager idManager = ((StandardJanusGraph) graph).getIDManager();
+            AtomicLong nextId = new AtomicLong();
+            LongAdder failed = new LongAdder();
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                long time = System.nanoTime();
+                List<Future<long[]>> futures = new ArrayList<>(threads);
+                for (int t = 0; t < threads; t++) {
+                    futures.add(executor.submit(() -> insert(graph, monitor, customIds ? idManager : null, nextId,
+                            vertices / threads, failed)));
+                }
+
+                List<long[]> latencies = new ArrayList<>(threads);
+                for (Future<long[]> future : futures) {
+                    latencies.add(future.get());
+                }
+                long elapsed = System.nanoTime() - time;
+
+                long[] insert = StressBenchmark.merge(latencies);
+                System.out.printf("%-6s %7d %10d %6.2f %8d %6d %10.1f %7d %8d %9.2f %9.2f %9.2f %9.2f %7d %8d %7d%n",
+                        customIds ? "custom" : "auto", threads, settings.blockSize, settings.renewPercentage,
+                        settings.renewTimeout, settings.waitTime, insert.length / (elapsed / 1e9),
+                        monitor.getBlocks(), monitor.getRenewals(), monitor.getAverageAcquisition(), monitor.getMaxAcquisition(),
+                        StressBenchmark.percentile(insert, 0.99), StressBenchmark.percentile(insert, 1),
+                        monitor.getStalls(), monitor.getRenewalStalls(), failed.sum());
+            } finally {
+                executor.shutdownNow();
+            }
+        } finally {
+            graph.close();
+        }
+    }
+
+    // implicit creation by concurrent inserts fails on lock contention
+    private static void makeSchema(JanusGraph graph) {
+        JanusGraphManagement mgmt = graph.openManagement();
+        mgmt.makePropertyKey("value").dataType(Long.class).make();
+        mgmt.makeEdgeLabel("next").make();
+        mgmt.commit();
+    }
+
+    // every vertex gets a property and an edge to the previous vertex of the transaction
+    private static long[] insert(JanusGraph graph, IdBlockMonitor monitor, IDManager idManager, AtomicLong nextId,
+                                 int vertices, LongAdder failed) {
+
+        long[] latencies = new long[vertices];
+        int completed = 0;
+
+        for (int i = 0; i < vertices; i += TRANSACTION_SIZE) {
+            JanusGraphTransaction tx = graph.newTransaction();
+            try {
+                Vertex previous = null;
+                for (int j = i; j < Math.min(i + TRANSACTION_SIZE, vertices); j++) {
+                    Vertex last = previous;
+                    long time = System.nanoTime();
+                    previous = monitor.insert(() -> {
+                        long value = nextId.incrementAndGet();
+                        Vertex vertex = idManager == null
+                                ? tx.addVertex("value", value)
+                                : tx.addVertex(T.id, idManager.toVertexId(value), "value", value);
+                        if (last != null) {
+                            last.addEdge("next", vertex);
+                        }
+                        return vertex;
+                    });
+                    latencies[completed++] = System.nanoTime() - time;
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                // mostly id block allocations which timed out
+                failed.increment();
+                if (tx.isOpen()) {
+                    tx.rollback();
+                }
+            }
+        }
+        return Arrays.copyOf(latencies, completed);
+    }
+
+    static class Settings {
+        final long blockSize;
+        final double renewPercentage;
+        final long renewTimeout;
+        final long waitTime;
+
+        Settings(long blockSize, double renewPercentage, long renewTimeout, long waitTime) {
+            this.blockSize = blockSize;
+            this.renewPercentage = renewPercentage;
+            this.renewTimeout = renewTimeout;
+            this.waitTime = waitTime;
+        }
+
+        JanusGraph open(boolean customIds) {
+            return JanusGraphFactory.build()
+                    .set("storage.backend", "inmemory")
+                    .set("ids.block-size", String.valueOf(blockSize))
+                    .set("ids.renew-percentage", String.valueOf(renewPercentage))
+                    .set("ids.renew-timeout", String.valueOf(renewTimeout))
+                    .set("ids.authority.wait-time", String.valueOf(waitTime))
+                    .set("graph.set-vertex-id", String.valueOf(customIds))
+                    .open();
+        }
+    }
+}
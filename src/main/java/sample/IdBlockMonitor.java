@@ -0,0 +1,219 @@
+package sample;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.IDAuthority;
+import org.janusgraph.diskstorage.IDBlock;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRange;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+import org.janusgraph.graphdb.database.idassigner.IDBlockSizer;
+
+import java.lang.reflect.Field;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Measures how long id blocks take to acquire and how often inserts stall.
+ * <p>
+ * JanusGraph has no hook for the id authority, so {@link #install} replaces it in the id
+ * assigner and its pools of an opened graph by a timing delegate. Blocks are normally
+ * renewed in the background once a pool has used up the renew percentage of its block,
+ * an insert only waits when the next block is not there yet. Inserts timed with
+ * {@link #insert} longer than the threshold are counted as stalls, and as renewal stalls
+ * if a block acquisition was running at the same time.
+ */
+public class IdBlockMonitor {
+
+    private final long stallThreshold;
+
+    private final LongAdder blocks = new LongAdder();
+    private final LongAdder renewals = new LongAdder();
+    // pools which got their first block, by partition and id namespace
+    private final Set<Long> pools = ConcurrentHashMap.newKeySet();
+    private final LongAdder acquisitionTime = new LongAdder();
+    private final LongAccumulator maxAcquisition = new LongAccumulator(Math::max, 0);
+    private final AtomicInteger acquiring = new AtomicInteger();
+    private final AtomicLong lastAcquisitionEnd = new AtomicLong();
+
+    private final LongAdder inserts = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder renewalStalls = new LongAdder();
+    private final LongAdder stallTime = new LongAdder();
+
+    IdBlockMonitor(long stallThreshold, TimeUnit unit) {
+        this.stallThreshold = unit.toNanos(stallThreshold);
+    }
+
+    public static IdBlockMonitor install(JanusGraph graph, long stallThreshold, TimeUnit unit) {
+
+        IdBlockMonitor monitor = new IdBlockMonitor(stallThreshold, unit);
+        try {
+            Object assigner = getField(graph, StandardJanusGraph.class, "idAssigner");
+            Class<?> assignerClass = assigner.getClass();
+
+            IDAuthority authority = new TimedIDAuthority((IDAuthority) getField(assigner, assignerClass, "idAuthority"), monitor);
+            setField(assigner, assignerClass, "idAuthority", authority);
+
+            monitor.setPoolAuthority(getField(assigner, assignerClass, "schemaIdPool"), authority);
+            monitor.setPoolAuthority(getField(assigner, assignerClass, "partitionVertexIdPool"), authority);
+            for (Object partitionPool : ((Map<?, ?>) getField(assigner, assignerClass, "idPools")).values()) {
+                for (Object pool : ((Map<?, ?>) partitionPool).values()) {
+                    monitor.setPoolAuthority(pool, authority);
+                }
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unsupported JanusGraph version", e);
+        }
+        return monitor;
+    }
+
+    // pools are created on first use, so existing ones already got their first block
+    private void setPoolAuthority(Object pool, IDAuthority authority) throws ReflectiveOperationException {
+        if (pool != null) {
+            Class<?> poolClass = pool.getClass();
+            setField(pool, poolClass, "idAuthority", authority);
+            pools.add(getPoolKey((int) getField(pool, poolClass, "partition"), (int) getField(pool, poolClass, "idNamespace")));
+        }
+    }
+
+    private static Object getField(Object target, Class<?> type, String name) throws ReflectiveOperationException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        return field.get(target);
+    }
+
+    private static void setField(Object target, Class<?> type, String name, Object value) throws ReflectiveOperationException {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+
+    /**
+     * Runs and times one insert, the id of a new element is assigned when it is created.
+     */
+    public <T> T insert(Supplier<T> insert) {
+
+        boolean renewing = acquiring.get() > 0;
+        long start = System.nanoTime();
+        try {
+            return insert.get();
+        } finally {
+            long end = System.nanoTime();
+            inserts.increment();
+            if (end - start > stallThreshold) {
+                stalls.increment();
+                stallTime.add(end - start);
+                if (renewing || acquiring.get() > 0 || lastAcquisitionEnd.get() >= start) {
+                    renewalStalls.increment();
+                }
+            }
+        }
+    }
+
+    void acquired(int partition, int idNamespace, long start, long end) {
+        blocks.increment();
+        if (!pools.add(getPoolKey(partition, idNamespace))) {
+            renewals.increment();
+        }
+        acquisitionTime.add(end - start);
+        maxAcquisition.accumulate(end - start);
+        lastAcquisitionEnd.accumulateAndGet(end, Math::max);
+    }
+
+    private static long getPoolKey(int partition, int idNamespace) {
+        return ((long) partition << 32) | idNamespace;
+    }
+
+    public long getBlocks() {
+        return blocks.sum();
+    }
+
+    public long getRenewals() {
+        return renewals.sum();
+    }
+
+    public double getAverageAcquisition() {
+        long count = blocks.sum();
+        return count == 0 ? 0 : acquisitionTime.sum() / 1e6 / count;
+    }
+
+    public double getMaxAcquisition() {
+        return maxAcquisition.get() / 1e6;
+    }
+
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    public long getRenewalStalls() {
+        return renewalStalls.sum();
+    }
+
+    public double getStallTime() {
+        return stallTime.sum() / 1e6;
+    }
+
+    public void print() {
+        System.out.printf("id blocks: %d, renewals: %d, acquisition avg: %.2fms, max: %.2fms%n",
+                getBlocks(), getRenewals(), getAverageAcquisition(), getMaxAcquisition());
+        System.out.printf("inserts: %d, stalls over %.2fms: %d, during renewal: %d, stalled time: %.2fms%n",
+                inserts.sum(), stallThreshold / 1e6, getStalls(), getRenewalStalls(), getStallTime());
+    }
+
+    static class TimedIDAuthority implements IDAuthority {
+        final IDAuthority authority;
+        final IdBlockMonitor monitor;
+
+        TimedIDAuthority(IDAuthority authority, IdBlockMonitor monitor) {
+            this.authority = authority;
+            this.monitor = monitor;
+        }
+
+        @Override
+        public IDBlock getIDBlock(int partition, int idNamespace, Duration timeout) throws BackendException {
+            monitor.acquiring.incrementAndGet();
+            long start = System.nanoTime();
+            try {
+                IDBlock block = authority.getIDBlock(partition, idNamespace, timeout);
+                monitor.acquired(partition, idNamespace, start, System.nanoTime());
+                return block;
+            } finally {
+                monitor.acquiring.decrementAndGet();
+            }
+        }
+
+        @Override
+        public List<KeyRange> getLocalIDPartition() throws BackendException {
+            return authority.getLocalIDPartition();
+        }
+
+        @Override
+        public void setIDBlockSizer(IDBlockSizer sizer) {
+            authority.setIDBlockSizer(sizer);
+        }
+
+        @Override
+        public void close() throws BackendException {
+            authority.close();
+        }
+
+        @Override
+        public String getUniqueID() {
+            return authority.getUniqueID();
+        }
+
+        @Override
+        public boolean supportsInterruption() {
+            return authority.supportsInterruption();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package sample;
+
+import org.janusgraph.graphdb.idmanagement.IDManager;
+
+/**
+ * Strategies turning a dense id count into a custom vertex id.
+ * <p>
+ * JanusGraph stores a vertex under a key which starts with the partition bits of its id
+ * followed by the count, so vertices of the same partition occupy one contiguous key range.
+ * Set "cluster.max-partitions" to control the number of partitions. The first child is
+ * passed as a vertex id, or null for leaves, since it may not have been written yet.
+ */
+public enum IdPlacement {
+
+    /**
+     * All atoms in partition 0 in creation order.
+     */
+    SEQUENTIAL {
+        @Override
+        long toVertexId(IDManager idManager, long count, String type, Long firstChild) {
+            return idManager.toVertexId(count);
+        }
+    },
+
+    /**
+     * Atoms of the same type share a partition.
+     */
+    TYPE {
+        @Override
+        long toVertexId(IDManager idManager, long count, String type, Long firstChild) {
+            return toVertexId(idManager, count, typePartition(idManager, type));
+        }
+    },
+
+    /**
+     * Nodes follow the partition of their first child, leaves are placed by type.
+     */
+    FIRST_CHILD {
+        @Override
+        long toVertexId(IDManager idManager, long count, String type, Long firstChild) {
+            long partition = firstChild == null
+                    ? typePartition(idManager, type)
+                    : idManager.getPartitionId(firstChild);
+            return toVertexId(idManager, count, partition);
+        }
+    };
+
+    abstract long toVertexId(IDManager idManager, long count, String type, Long firstChild);
+
+    static long typePartition(IDManager idManager, String type) {
+        return Math.floorMod(type.hashCode(), idManager.getPartitionBound());
+    }
+
+    static long toVertexId(IDManager idManager, long count, long partition) {
+        return idManager.getVertexID(count, partition, IDManager.VertexIDType.NormalVertex);
+    }
+}
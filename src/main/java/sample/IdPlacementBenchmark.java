@@ -0,0 +1,178 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares key locality of id placement strategies: how fragmented the key ranges of
+ * atoms of one type are, how far nodes are from their children in key order and how long
+ * per type reads and child traversals take.
+ */
+public class IdPlacementBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String backend = "inmemory";
+        int partitions = 32;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            backend = args[1];
+        }
+
+        if (args.length > 2) {
+            partitions = Integer.parseInt(args[2]);
+        }
+
+        System.out.printf("elements: %d, backend: %s, partitions: %d%n", N, backend, partitions);
+
+        DataGenerator generator = new DataGenerator(3, 3, 3, 3, N);
+
+        List<String> results = new ArrayList<>();
+        for (IdPlacement placement : IdPlacement.values()) {
+            try (JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend, partitions, placement), false, placement)) {
+                generator.upload(storage);
+                results.add(measure(storage, placement));
+            }
+        }
+
+        System.out.printf("%-12s %10s %12s %14s %12s %14s%n",
+                "placement", "type runs", "avg run", "child distance", "scan(ms)", "traversal(ms)");
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String measure(JanusGraphSorage storage, IdPlacement placement) {
+
+        List<AtomInfo> atoms = new ArrayList<>();
+
+        GraphTraversalSource g = storage.traversal();
+        Iterator<Vertex> vertices = g.V();
+        while (vertices.hasNext()) {
+            Vertex v = vertices.next();
+            if (AtomStatistics.LABEL.equals(v.label())) {
+                continue;
+            }
+            long id = (long) v.id();
+            long[] children = "Node".equals(v.label()) ? (long[]) v.property("ids").value() : new long[0];
+            atoms.add(new AtomInfo(id, storage.idManager.getKey(id).getLong(0), v.property("type").value().toString(), children));
+        }
+        storage.rollback();
+
+        atoms.sort(Comparator.comparing(atom -> atom.key, Long::compareUnsigned));
+
+        Map<Long, Integer> ranks = new HashMap<>();
+        Map<String, List<Object>> idsByType = new HashMap<>();
+        for (int i = 0; i < atoms.size(); i++) {
+            AtomInfo atom = atoms.get(i);
+            ranks.put(atom.id, i);
+            idsByType.computeIfAbsent(atom.type, type -> new ArrayList<>()).add(atom.id);
+        }
+
+        int runs = 0;
+        for (int i = 0; i < atoms.size(); i++) {
+            if (i == 0 || !atoms.get(i).type.equals(atoms.get(i - 1).type)) {
+                runs++;
+            }
+        }
+
+        long distance = 0;
+        long references = 0;
+        for (int i = 0; i < atoms.size(); i++) {
+            for (long child : atoms.get(i).children) {
+                distance += Math.abs(i - ranks.get(child));
+                references++;
+            }
+        }
+
+        // the first round warms up the JIT and caches, the second one is reported
+        long scanTime = 0;
+        long traversalTime = 0;
+        for (int round = 0; round < 2; round++) {
+            long time = System.nanoTime();
+            for (List<Object> ids : idsByType.values()) {
+                g.V(ids.toArray()).values("type").count().next();
+            }
+            scanTime = System.nanoTime() - time;
+            storage.rollback();
+
+            time = System.nanoTime();
+            for (AtomInfo atom : atoms) {
+                if (atom.children.length > 0) {
+                    g.V(atom.id).in().count().next();
+                }
+            }
+            traversalTime = System.nanoTime() - time;
+            storage.rollback();
+        }
+
+        return String.format("%-12s %10d %12.2f %14.2f %12.2f %14.2f",
+                placement, runs, (double) atoms.size() / Math.max(runs, 1),
+                references == 0 ? 0 : (double) distance / references,
+                scanTime / 1e6, traversalTime / 1e6);
+    }
+
+    private static JanusGraph getGraph(String backend, int partitions, IdPlacement placement) throws IOException {
+        JanusGraphFactory.Builder builder = JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("cluster.max-partitions", partitions)
+                .set("ids.block-size", "100000");
+
+        if ("inmemory".equals(backend)) {
+            builder = builder
+                    .set("ids.authority.wait-time", "5")
+                    .set("ids.renew-timeout", "50");
+        }
+
+        if ("berkeleyje".equals(backend)) {
+            File directory = new File("target/placement", placement.name().toLowerCase());
+            delete(directory.toPath());
+            builder = builder.set("storage.directory", directory.getAbsolutePath());
+        }
+
+        return builder.open();
+    }
+
+    static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    static class AtomInfo {
+        final long id;
+        final long key;
+        final String type;
+        final long[] children;
+
+        AtomInfo(long id, long key, String type, long[] children) {
+            this.id = id;
+            this.key = key;
+            this.type = type;
+            this.children = children;
+        }
+    }
+}
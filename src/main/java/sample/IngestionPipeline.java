@@ -0,0 +1,406 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import sample.DataGenerator.DataNode;
+
+/**
+ * Staged ingestion: source -> dedup -> resolve -> write -> commit.
+ * <p>
+ * Stages are connected by bounded blocking queues, so a slow stage blocks the ones
+ * in front of it instead of letting them buffer without limit.
+ * Transactions of JanusGraphSorage are bound to the writer thread, so every writer
+ * commits its own batches; commit time is reported as a separate stage.
+ */
+public class IngestionPipeline {
+
+    private static final Object END = new Object();
+
+    final JanusGraphSorage storage;
+    final ConcurrentUpsert upsert;
+    final int queueCapacity;
+    final int dedupThreads;
+    final int resolveThreads;
+    final int writeThreads;
+    final int batchSize;
+    final int maxDedupKeys;
+
+    final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+    final StageMetrics sourceMetrics = new StageMetrics("source");
+    final StageMetrics dedupMetrics = new StageMetrics("dedup");
+    final StageMetrics resolveMetrics = new StageMetrics("resolve");
+    final StageMetrics writeMetrics = new StageMetrics("write");
+    final StageMetrics commitMetrics = new StageMetrics("commit");
+
+    public IngestionPipeline(JanusGraphSorage storage, int resolveThreads, int writeThreads) {
+        this(storage, 1024, 1, resolveThreads, writeThreads, 100, 1_000_000);
+    }
+
+    public IngestionPipeline(JanusGraphSorage storage, int queueCapacity, int dedupThreads, int resolveThreads,
+                             int writeThreads, int batchSize, int maxDedupKeys) {
+        if (writeThreads > 1 && !storage.isConcurrent()) {
+            throw new IllegalArgumentException("Several writers require storage in concurrent mode");
+        }
+        this.storage = storage;
+        this.upsert = storage.isConcurrent() ? new ConcurrentUpsert(storage) : null;
+        this.queueCapacity = queueCapacity;
+        this.dedupThreads = dedupThreads;
+        this.resolveThreads = resolveThreads;
+        this.writeThreads = writeThreads;
+        this.batchSize = batchSize;
+        this.maxDedupKeys = maxDedupKeys;
+    }
+
+    public void run(Iterator<DataNode> source) throws InterruptedException {
+
+        BlockingQueue<Object> sourceQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> dedupQueue = new ArrayBlockingQueue<>(queueCapacity);
+        BlockingQueue<Object> resolveQueue = new ArrayBlockingQueue<>(queueCapacity);
+
+        dedupMetrics.queue = sourceQueue;
+        resolveMetrics.queue = dedupQueue;
+        writeMetrics.queue = resolveQueue;
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+
+        for (StageMetrics metrics : getMetrics()) {
+            metrics.start();
+        }
+
+        start("source", new AtomicInteger(1), failure, threads, () -> {
+            while (source.hasNext()) {
+                long time = System.nanoTime();
+                DataNode node = source.next();
+                sourceMetrics.processed(1, System.nanoTime() - time);
+                sourceQueue.put(node);
+            }
+        }, sourceQueue);
+
+        stage("dedup", dedupThreads, failure, threads, sourceQueue, dedupQueue, dedupMetrics, item -> {
+            DataNode node = (DataNode) item;
+            if (seen.size() >= maxDedupKeys) {
+                seen.clear();
+            }
+            return seen.add(ResolvedTree.key(node)) ? node : null;
+        });
+
+        stage("resolve", resolveThreads, failure, threads, dedupQueue, resolveQueue, resolveMetrics,
+                item -> ResolvedTree.resolve((DataNode) item));
+
+        writers(failure, threads, resolveQueue);
+
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor();
+        reporter.scheduleAtFixedRate(this::printProgress, 1, 1, TimeUnit.SECONDS);
+        try {
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        } finally {
+            reporter.shutdownNow();
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+    }
+
+    private void stage(String name, int parallelism, AtomicReference<Throwable> failure,
+                       List<Thread> all, BlockingQueue<Object> input, BlockingQueue<Object> output,
+                       StageMetrics metrics, ItemFunction function) {
+
+        AtomicInteger running = new AtomicInteger(parallelism);
+
+        for (int i = 0; i < parallelism; i++) {
+            start(name + "-" + i, running, failure, all, () -> {
+                Object item;
+                while ((item = input.take()) != END) {
+                    long time = System.nanoTime();
+                    Object result = function.apply(item);
+                    metrics.processed(1, System.nanoTime() - time);
+                    if (result != null) {
+                        output.put(result);
+                    }
+                }
+                // let sibling threads of the stage see the end of the stream too
+                input.put(END);
+            }, output);
+        }
+    }
+
+    private void writers(AtomicReference<Throwable> failure, List<Thread> all, BlockingQueue<Object> input) {
+
+        AtomicInteger running = new AtomicInteger(writeThreads);
+
+        for (int i = 0; i < writeThreads; i++) {
+            start("write-" + i, running, failure, all, () -> {
+                List<ResolvedTree> batch = new ArrayList<>(batchSize);
+                boolean end = false;
+                while (!end) {
+                    Object item = input.take();
+                    while (item != END) {
+                        batch.add((ResolvedTree) item);
+                        if (batch.size() >= batchSize || (item = input.poll()) == null) {
+                            break;
+                        }
+                    }
+                    if (item == END) {
+                        input.put(END);
+                        end = true;
+                    }
+                    if (!batch.isEmpty()) {
+                        write(batch);
+                        batch.clear();
+                    }
+                }
+            }, null);
+        }
+    }
+
+    private void write(List<ResolvedTree> batch) {
+        if (upsert == null) {
+            long time = System.nanoTime();
+            GraphTraversalSource g = storage.traversal();
+            for (ResolvedTree tree : batch) {
+                tree.write(storage, g);
+            }
+            writeMetrics.processed(batch.size(), System.nanoTime() - time);
+
+            time = System.nanoTime();
+            storage.commit();
+            commitMetrics.processed(1, System.nanoTime() - time);
+        } else {
+            long time = System.nanoTime();
+            long[] commitTime = new long[1];
+            upsert.execute(g -> {
+                for (ResolvedTree tree : batch) {
+                    tree.write(storage, g);
+                }
+                return null;
+            }, nanos -> commitTime[0] = nanos);
+            // retried attempts and their rollbacks are part of the write stage
+            writeMetrics.processed(batch.size(), System.nanoTime() - time - commitTime[0]);
+            commitMetrics.processed(1, commitTime[0]);
+        }
+    }
+
+    // threads are registered before they start, so a failure of any thread reaches all of them
+    private void start(String name, AtomicInteger running, AtomicReference<Throwable> failure,
+                       List<Thread> all, StageBody body, BlockingQueue<Object> output) {
+
+        Thread thread = new Thread(() -> {
+            try {
+                body.run();
+            } catch (Throwable e) {
+                // stop all stages, otherwise the ones in front would block on full queues forever
+                if (failure.compareAndSet(null, e)) {
+                    for (Thread other : all) {
+                        other.interrupt();
+                    }
+                }
+            } finally {
+                // the last thread of a stage closes the downstream queue
+                if (running.decrementAndGet() == 0 && output != null) {
+                    try {
+                        output.put(END);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }, name);
+        all.add(thread);
+        thread.start();
+        if (failure.get() != null) {
+            thread.interrupt();
+        }
+    }
+
+    public List<StageMetrics> getMetrics() {
+        List<StageMetrics> metrics = new ArrayList<>();
+        metrics.add(sourceMetrics);
+        metrics.add(dedupMetrics);
+        metrics.add(resolveMetrics);
+        metrics.add(writeMetrics);
+        metrics.add(commitMetrics);
+        return metrics;
+    }
+
+    public void printProgress() {
+        StringBuilder builder = new StringBuilder();
+        for (StageMetrics metrics : getMetrics()) {
+            builder.append(String.format("%s: %d (queue %d) ", metrics.name, metrics.getProcessed(), metrics.getQueueDepth()));
+        }
+        System.out.println(builder.toString().trim());
+    }
+
+    public void printStatistics() {
+        System.out.printf("%-8s %10s %12s %12s %10s%n", "stage", "items", "busy(ms)", "items/s", "max queue");
+        for (StageMetrics metrics : getMetrics()) {
+            System.out.printf("%-8s %10d %12.2f %12.2f %10d%n",
+                    metrics.name, metrics.getProcessed(), metrics.getBusyNanos() / 1e6,
+                    metrics.getThroughput(), metrics.getMaxQueueDepth());
+        }
+        if (upsert != null) {
+            upsert.printStatistics();
+        }
+    }
+
+    interface StageBody {
+        void run() throws Exception;
+    }
+
+    interface ItemFunction {
+        Object apply(Object item) throws Exception;
+    }
+
+    public static class StageMetrics {
+        final String name;
+        final LongAdder processed = new LongAdder();
+        final LongAdder busyNanos = new LongAdder();
+        final AtomicLong maxQueueDepth = new AtomicLong();
+        volatile long startTime = System.nanoTime();
+        // queue the stage reads from, null for the source
+        volatile BlockingQueue<Object> queue;
+
+        StageMetrics(String name) {
+            this.name = name;
+        }
+
+        void start() {
+            startTime = System.nanoTime();
+        }
+
+        void processed(int items, long nanos) {
+            processed.add(items);
+            busyNanos.add(nanos);
+            getQueueDepth();
+        }
+
+        public long getProcessed() {
+            return processed.sum();
+        }
+
+        public long getBusyNanos() {
+            return busyNanos.sum();
+        }
+
+        public double getThroughput() {
+            double seconds = (System.nanoTime() - startTime) / 1e9;
+            return seconds == 0 ? 0 : processed.sum() / seconds;
+        }
+
+        public long getQueueDepth() {
+            BlockingQueue<Object> current = queue;
+            long depth = current == null ? 0 : current.size();
+            maxQueueDepth.accumulateAndGet(depth, Math::max);
+            return depth;
+        }
+
+        public long getMaxQueueDepth() {
+            return maxQueueDepth.get();
+        }
+    }
+
+    /**
+     * A tree flattened in post order, equal subtrees are stored once.
+     */
+    static class ResolvedTree {
+        final String[] types;
+        final String[] values;
+        final int[][] children;
+
+        ResolvedTree(List<String> types, List<String> values, List<int[]> children) {
+            this.types = types.toArray(new String[0]);
+            this.values = values.toArray(new String[0]);
+            this.children = children.toArray(new int[0][]);
+        }
+
+        static ResolvedTree resolve(DataNode root) {
+            List<String> types = new ArrayList<>();
+            List<String> values = new ArrayList<>();
+            List<int[]> children = new ArrayList<>();
+            resolve(root, new HashMap<>(), types, values, children);
+            return new ResolvedTree(types, values, children);
+        }
+
+        private static int resolve(DataNode node, Map<String, Integer> positions,
+                                   List<String> types, List<String> values, List<int[]> children) {
+
+            int[] positionsOfChildren = new int[node.children.length];
+            StringBuilder key = new StringBuilder(node.type).append('(');
+            if (node.isLeaf()) {
+                key.append('\'').append(node.value).append('\'');
+            }
+            for (int i = 0; i < node.children.length; i++) {
+                positionsOfChildren[i] = resolve(node.children[i], positions, types, values, children);
+                key.append(positionsOfChildren[i]).append(',');
+            }
+            key.append(')');
+
+            Integer position = positions.get(key.toString());
+            if (position != null) {
+                return position;
+            }
+
+            types.add(node.type);
+            values.add(node.value);
+            children.add(positionsOfChildren);
+            positions.put(key.toString(), types.size() - 1);
+            return types.size() - 1;
+        }
+
+        static String key(DataNode node) {
+            StringBuilder builder = new StringBuilder();
+            key(node, builder);
+            return builder.toString();
+        }
+
+        private static void key(DataNode node, StringBuilder builder) {
+            builder.append(node.type).append('(');
+            if (node.isLeaf()) {
+                builder.append('\'').append(node.value).append('\'');
+            }
+            for (DataNode child : node.children) {
+                key(child, builder);
+            }
+            builder.append(')');
+        }
+
+        Vertex write(JanusGraphSorage storage, GraphTraversalSource g) {
+            Vertex[] vertices = new Vertex[types.length];
+            for (int i = 0; i < types.length; i++) {
+                if (children[i].length == 0) {
+                    vertices[i] = storage.getLeaf(g, types[i], values[i]);
+                } else {
+                    Vertex[] childVertices = new Vertex[children[i].length];
+                    for (int j = 0; j < childVertices.length; j++) {
+                        childVertices[j] = vertices[children[i][j]];
+                    }
+                    vertices[i] = storage.getNode(g, types[i], childVertices);
+                }
+            }
+            return vertices[vertices.length - 1];
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package sample;
+
+public class IngestionPipelineSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 10;
+        int resolvers = 2;
+        int writers = 1;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            resolvers = Integer.parseInt(args[1]);
+        }
+
+        if (args.length > 2) {
+            writers = Integer.parseInt(args[2]);
+        }
+
+        System.out.printf("elements: %d, resolvers: %d, writers: %d%n", N, resolvers, writers);
+
+        DataGenerator generator = new DataGenerator(3, 3, 3, 3, N);
+
+        long time = System.currentTimeMillis();
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage(writers > 1)) {
+            generator.upload(new IngestionPipeline(storage, resolvers, writers));
+        }
+
+        System.out.printf("elapsed time: %dms%n", System.currentTimeMillis() - time);
+    }
+}
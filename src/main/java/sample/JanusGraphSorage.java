@@ -2,8 +2,12 @@ package sample;
 
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
 import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Direction;
+import org.apache.tinkerpop.gremlin.structure.Edge;
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.apache.tinkerpop.gremlin.structure.VertexProperty;
+import org.janusgraph.core.Cardinality;
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.schema.JanusGraphManagement;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
@@ -11,17 +15,73 @@ import org.janusgraph.graphdb.idmanagement.IDManager;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class JanusGraphSorage implements Closeable {
 
-    long currentId = 0;
+    static final String CHILDREN = "children";
+    // number of child positions which reference an atom, absent for atoms never referenced
+    static final String REFS = "refs";
+    // graph numbers of children stored in other graphs, in the order of "ids"
+    static final String SHARDS = "shards";
+    static final int RECOVERY_BATCH = 1000;
+
+    static final Set<String> ATOM_TAGS = new HashSet<>(Arrays.asList(
+            AtomStatistics.KIND_PREFIX + "Leaf", AtomStatistics.KIND_PREFIX + "Node"));
+    static final Set<String> NODE_TAGS = Collections.singleton(AtomStatistics.KIND_PREFIX + "Node");
+
+    final AtomicLong currentId = new AtomicLong();
     final JanusGraph graph;
     final IDManager idManager;
+    final AtomStatistics statistics = new AtomStatistics();
+    // claims are only tracked when several writers share the storage
+    final AtomClaims claims;
+    final IdPlacement placement;
+    final LinkRepresentation representation;
+    final Set<String> edgeLabels = ConcurrentHashMap.newKeySet();
+    final TraversalTemplates templates = new TraversalTemplates();
+    final QueryCache cache = new QueryCache();
+    final AtomReferences references = new AtomReferences();
+    final ThreadLocal<ChangeLog.Batch> changes = ThreadLocal.withInitial(ChangeLog.Batch::new);
+    ChangeLog changeLog;
 
     public JanusGraphSorage(JanusGraph graph) {
+        this(graph, false);
+    }
+
+    public JanusGraphSorage(JanusGraph graph, boolean concurrent) {
+        this(graph, concurrent, IdPlacement.SEQUENTIAL);
+    }
+
+    public JanusGraphSorage(JanusGraph graph, boolean concurrent, IdPlacement placement) {
+        this(graph, concurrent, placement, LinkRepresentation.HYBRID);
+    }
+
+    public JanusGraphSorage(JanusGraph graph, boolean concurrent, IdPlacement placement,
+                            LinkRepresentation representation) {
         this.graph = graph;
         this.idManager = ((StandardJanusGraph) graph).getIDManager();
+        this.claims = concurrent ? new AtomClaims() : null;
+        this.placement = placement;
+        this.representation = representation;
         makeIndices();
+        statistics.load(graph.traversal());
+        graph.tx().rollback();
+        currentId.set(statistics.getLastId());
+    }
+
+    public boolean isConcurrent() {
+        return claims != null;
     }
 
     public GraphTraversalSource traversal() {
@@ -29,55 +89,490 @@ public class JanusGraphSorage implements Closeable {
     }
 
     public void commit() {
-        graph.tx().commit();
+        ChangeLog log = changeLog;
+        if (log == null) {
+            commitTransaction();
+        } else {
+            // a writer can only find an atom once its transaction committed, so with the commit
+            // and the append under one lock a child is always logged before its parents
+            synchronized (log) {
+                commitTransaction();
+                try {
+                    log.append(changes.get(), currentId.get());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        if (claims != null) {
+            claims.committed();
+        }
+    }
+
+    private void commitTransaction() {
+        try {
+            if (claims != null) {
+                claims.claim();
+            }
+            statistics.prepareCommit(graph.traversal(), () -> getNextId(AtomStatistics.LABEL, null), currentId::get);
+            graph.tx().commit();
+        } catch (RuntimeException e) {
+            rollback();
+            throw e;
+        }
+        statistics.committed();
+        cache.committed();
+        references.committed();
+    }
+
+    public void rollback() {
+        if (graph.tx().isOpen()) {
+            graph.tx().rollback();
+        }
+        statistics.rolledBack();
+        cache.rolledBack();
+        references.rolledBack();
+        changes.get().clear();
+        if (claims != null) {
+            claims.rolledBack();
+        }
+    }
+
+    public AtomStatistics getStatistics() {
+        return statistics;
     }
 
+    public TraversalTemplates getTemplates() {
+        return templates;
+    }
+
+    public QueryCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Logs the atoms of every following commit, atoms stored before are not logged.
+     */
+    public void setChangeLog(ChangeLog changeLog) {
+        this.changeLog = changeLog;
+    }
+
+    /**
+     * Recreates the atoms of a change log in this storage, which has to be empty and must not
+     * log changes itself yet. Returns the number of recreated atoms.
+     */
+    public long recover(Path directory) throws IOException {
+
+        if (changeLog != null) {
+            throw new IllegalStateException("Recovered atoms would be logged again");
+        }
+
+        GraphTraversalSource g = traversal();
+        long[] atoms = new long[1];
+        long counter = ChangeLog.replay(directory, change -> {
+            if (change.isDeleted()) {
+                remove(g, g.V(change.id).next());
+            } else if (change.isLeaf()) {
+                addLeaf(g, change.id, change.type, change.value);
+            } else {
+                Vertex node = addNode(g, change.id, change.type, change.arity, change.ids);
+                if (change.isLinked()) {
+                    Vertex[] children = new Vertex[change.ids.length];
+                    for (int i = 0; i < children.length; i++) {
+                        children[i] = g.V(change.ids[i]).next();
+                    }
+                    addEdges(change.type, children, node);
+                }
+            }
+
+            // statistics are written by the last commit, once the id counter is restored,
+            // a statistics vertex created before could take the id of an atom replayed later
+            if (++atoms[0] % RECOVERY_BATCH == 0) {
+                graph.tx().commit();
+            }
+        });
+
+        currentId.set(Math.max(currentId.get(), counter));
+        commit();
+        return atoms[0];
+    }
+
+    /**
+     * Finds or creates a leaf. In a concurrent storage a found atom which the transaction
+     * references and the {@link OrphanCollector} removes meanwhile makes the commit fail
+     * with a conflict, the retry creates the atom again.
+     */
     public Vertex getLeaf(GraphTraversalSource g, String type, String value) {
 
-        GraphTraversal<Vertex, Vertex> iter = g
+        Vertex vertex = findLeaf(g, type, value);
+        if (vertex != null) {
+            return vertex;
+        }
+
+        return addLeaf(g, getNextId(type, null), type, value);
+    }
+
+    /**
+     * Finds or creates a node, a found node can be removed meanwhile like in {@link #getLeaf}.
+     */
+    public Vertex getNode(GraphTraversalSource g, String type, Vertex... children) {
+
+        long[] ids = getIds(children);
+
+        Vertex vertex = findNode(g, type, ids);
+        if (vertex != null) {
+            return vertex;
+        }
+
+        vertex = addNode(g, getNextId(type, ids.length > 0 ? ids[0] : null), type, children.length, ids);
+        addEdges(type, children, vertex);
+
+        return vertex;
+    }
+
+    /**
+     * Finds or creates a node whose children are stored in other graphs. The "ids" property
+     * holds the ids of the children and the "shards" property the number of the graph of
+     * every child. The change log only records the ids.
+     */
+    public Vertex getNodeByIds(GraphTraversalSource g, String type, long[] shards, long[] ids) {
+
+        if (!representation.idsProperty) {
+            throw new IllegalStateException("Nodes of children in other graphs need the ids property");
+        }
+
+        if (claims != null) {
+            claims.begin();
+        }
+        cache.begin();
+
+        // children of different graphs can have the same ids
+        Iterator<Vertex> candidates = g.V().hasLabel("Node").has("type", type).has("ids", ids);
+        while (candidates.hasNext()) {
+            Vertex candidate = candidates.next();
+            if (Arrays.equals(candidate.<long[]>value(SHARDS), shards)) {
+                return candidate;
+            }
+        }
+
+        Vertex vertex = addNode(g, getNextId(type, null), type, ids.length, ids, getNodeKey(type, ids, shards));
+        vertex.property(SHARDS, shards);
+        if (changeLog != null) {
+            changes.get().node((long) vertex.id(), type, ids.length, false, ids);
+        }
+        return vertex;
+    }
+
+    Vertex findLeaf(GraphTraversalSource g, String type, String value) {
+
+        if (claims != null) {
+            claims.begin();
+        }
+        cache.begin();
+
+        return templates.<Vertex, Vertex>get("Leaf", 2, () -> graph.traversal()
                 .V()
                 .hasLabel("Leaf")
-                .has("type", type)
-                .has("value", value);
+                .has("type", TraversalTemplate.parameter(0))
+                .has("value", TraversalTemplate.parameter(1)))
+                .next(g.getGraph(), type, value);
+    }
+
+    Vertex findNode(GraphTraversalSource g, String type, long[] ids) {
+
+        if (claims != null) {
+            claims.begin();
+        }
+        cache.begin();
+
+        if (!representation.idsProperty) {
+            return findNodeByEdges(g, type, ids);
+        }
+
+        return templates.<Vertex, Vertex>get("Node", 2, () -> graph.traversal()
+                .V()
+                .hasLabel("Node")
+                .has("type", TraversalTemplate.parameter(0))
+                .has("ids", TraversalTemplate.parameter(1)))
+                .next(g.getGraph(), type, ids);
+    }
+
+    // candidates are the parents of the first child at position 0, every other child has
+    // to be connected at its position as well
+    private Vertex findNodeByEdges(GraphTraversalSource g, String type, long[] ids) {
+
+        if (ids.length == 0) {
+            throw new IllegalArgumentException("Nodes without children need the ids property");
+        }
+
+        Iterator<Vertex> candidates = g.V(ids[0]).next().vertices(Direction.OUT, getKey(type, ids.length, 0));
+        while (candidates.hasNext()) {
+            Vertex candidate = candidates.next();
+            if (hasChildren(candidate, type, ids)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasChildren(Vertex node, String type, long[] ids) {
+        for (int i = 1; i < ids.length; i++) {
+            boolean found = false;
+            Iterator<Vertex> children = node.vertices(Direction.IN, getKey(type, ids.length, i));
+            while (!found && children.hasNext()) {
+                found = (long) children.next().id() == ids[i];
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the ids of the children of the given node in position order.
+     */
+    public long[] getChildren(Vertex node) {
+
+        if (representation.idsProperty) {
+            return node.value("ids");
+        }
 
-        if (iter.hasNext()) {
-            return iter.next();
+        int arity = node.<Integer>value("arity");
+        long[] ids = new long[arity];
+        Iterator<Edge> edges = node.edges(Direction.IN);
+        while (edges.hasNext()) {
+            Edge edge = edges.next();
+            String label = edge.label();
+            ids[Integer.parseInt(label.substring(label.lastIndexOf('_') + 1))] = (long) edge.outVertex().id();
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the nodes which have the given atom as a child.
+     */
+    public Iterator<Vertex> getParents(GraphTraversalSource g, Vertex atom) {
+
+        if (representation.reverseIndex) {
+            return g.V().hasLabel("Node").has(CHILDREN, atom.id());
+        }
+
+        return atom.vertices(Direction.OUT);
+    }
+
+    /**
+     * Returns the ids of the nodes which have the atom with the given id as a child, cached
+     * until the next commit of a node.
+     */
+    public List<Long> getParentIds(GraphTraversalSource g, long id) {
+        return cache.get("parents", Collections.singletonList(id), NODE_TAGS, () -> {
+            List<Long> ids = new ArrayList<>();
+            Iterator<Vertex> atoms = g.V(id);
+            if (atoms.hasNext()) {
+                getParents(g, atoms.next()).forEachRemaining(parent -> ids.add((long) parent.id()));
+            }
+            return ids;
+        });
+    }
+
+    /**
+     * Returns the ids of all atoms of the given type, cached until the next commit of an
+     * atom of this type.
+     */
+    public List<Long> getAtomIds(GraphTraversalSource g, String type) {
+        return cache.get("atomsByType", Collections.singletonList(type),
+                Collections.singleton(AtomStatistics.TYPE_PREFIX + type),
+                () -> g.V().hasLabel("Leaf", "Node").has("type", type).id().map(id -> (long) id.get()).toList());
+    }
+
+    /**
+     * Returns the ids of all atoms, cached until the next commit of an atom.
+     */
+    public List<Long> getAtomIds(GraphTraversalSource g) {
+        return cache.get("atoms", Collections.emptyList(), ATOM_TAGS,
+                () -> g.V().hasLabel("Leaf", "Node").id().map(id -> (long) id.get()).toList());
+    }
+
+    /**
+     * Deletes an atom which no node references. Its children become candidates of the
+     * {@link OrphanCollector} once the transaction committed.
+     * <p>
+     * Nodes created by {@link #getNodeByIds} do not count as references of their children.
+     * In a concurrent storage a writer which references the atom meanwhile makes the commit
+     * of one of both fail with a conflict.
+     */
+    public void delete(GraphTraversalSource g, Vertex atom) {
+
+        if (claims != null) {
+            claims.begin();
+        }
+        if (getParents(g, atom).hasNext()) {
+            throw new IllegalStateException(String.format("Atom %s is referenced by a node", atom.id()));
+        }
+
+        remove(g, atom);
+    }
+
+    /**
+     * Returns true if the atom was referenced once and no node references it anymore, a
+     * count which disagrees with the parents found is corrected.
+     */
+    boolean isOrphan(GraphTraversalSource g, Vertex atom) {
+
+        VertexProperty<Integer> refs = atom.property(REFS);
+        if (!refs.isPresent()) {
+            return false;
+        }
+
+        int parents = countParents(g, atom);
+        if (parents != refs.value()) {
+            atom.property(REFS, parents);
+        }
+        return parents == 0;
+    }
+
+    int countParents(GraphTraversalSource g, Vertex atom) {
+        int parents = 0;
+        for (Iterator<Vertex> iterator = getParents(g, atom); iterator.hasNext(); iterator.next()) {
+            parents++;
+        }
+        return parents;
+    }
+
+    void remove(GraphTraversalSource g, Vertex atom) {
+
+        long id = (long) atom.id();
+        String type = atom.value("type");
+
+        if ("Leaf".equals(atom.label())) {
+            statistics.leafDeleted(type);
+            cache.changed(AtomStatistics.KIND_PREFIX + "Leaf", AtomStatistics.TYPE_PREFIX + type);
+        } else {
+            long[] children = getChildren(atom);
+            statistics.nodeDeleted(type, atom.<Integer>value("arity"));
+            if (representation.edges) {
+                statistics.edgesDeleted(children.length);
+            }
+            cache.changed(AtomStatistics.KIND_PREFIX + "Node", AtomStatistics.TYPE_PREFIX + type);
+
+            for (long child : children) {
+                release(g, child);
+            }
+        }
+
+        if (changeLog != null) {
+            changes.get().delete(id);
+        }
+        if (claims != null) {
+            claims.removed(getReferenceKey(id));
+        }
+        atom.remove();
+    }
+
+    private void reference(Vertex child) {
+        if (claims != null) {
+            claims.referenced(getReferenceKey(child.id()));
+        }
+        VertexProperty<Integer> refs = child.property(REFS);
+        child.property(REFS, refs.isPresent() ? refs.value() + 1 : 1);
+    }
+
+    // counts are updated without a lock, so concurrent releases can lose a decrement, every
+    // released child is a candidate and the collector checks its parents
+    private void release(GraphTraversalSource g, long id) {
+
+        Iterator<Vertex> children = g.V(id);
+        if (!children.hasNext()) {
+            return;
         }
 
+        Vertex child = children.next();
+        VertexProperty<Integer> refs = child.property(REFS);
+        if (refs.isPresent() && refs.value() > 0) {
+            child.property(REFS, refs.value() - 1);
+        }
+        references.released(id);
+    }
+
+    Vertex addLeaf(GraphTraversalSource g, long id, String type, String value) {
+
+        if (claims != null) {
+            String key = getLeafKey(type, value);
+            claims.check(key);
+            claims.created(key);
+        }
+
+        statistics.leafCreated(type);
+        if (changeLog != null) {
+            changes.get().leaf(id, type, value);
+        }
+        cache.changed(AtomStatistics.KIND_PREFIX + "Leaf", AtomStatistics.TYPE_PREFIX + type);
+
         return g
                 .addV("Leaf")
-                .property(T.id, getNextId())
+                .property(T.id, id)
                 .property("type", type)
                 .property("value", value).next();
     }
 
-    public Vertex getNode(GraphTraversalSource g, String type, Vertex... children) {
+    Vertex addNode(GraphTraversalSource g, long id, String type, int arity, long[] ids) {
+        return addNode(g, id, type, arity, ids, getNodeKey(type, ids));
+    }
 
-        long[] ids = getIds(children);
+    private Vertex addNode(GraphTraversalSource g, long id, String type, int arity, long[] ids, String key) {
 
-        GraphTraversal<Vertex, Vertex> iter = g
-                .V()
-                .hasLabel("Node")
-                .has("type", type)
-                .has("ids", ids);
-
-        if (iter.hasNext()) {
-            return iter.next();
+        if (claims != null) {
+            claims.check(key);
+            claims.created(key);
         }
 
-        Vertex vertex = g
+        statistics.nodeCreated(type, arity);
+        cache.changed(AtomStatistics.KIND_PREFIX + "Node", AtomStatistics.TYPE_PREFIX + type);
+
+        GraphTraversal<Vertex, Vertex> traversal = g
                 .addV("Node")
-                .property(T.id, getNextId())
+                .property(T.id, id)
                 .property("type", type)
-                .property("arity", children.length)
-                .property("ids", ids).next();
+                .property("arity", arity);
+
+        if (representation.idsProperty) {
+            traversal = traversal.property("ids", ids);
+        }
+
+        if (representation.reverseIndex) {
+            for (long child : ids) {
+                traversal = traversal.property(VertexProperty.Cardinality.set, CHILDREN, child);
+            }
+        }
+
+        return traversal.next();
+    }
+
+    // nodes are logged once connected, so that children always come first
+    void addEdges(String type, Vertex[] children, Vertex vertex) {
+
+        if (changeLog != null) {
+            changes.get().node((long) vertex.id(), type, children.length, true, getIds(children));
+        }
+
+        for (Vertex child : children) {
+            reference(child);
+        }
+
+        if (!representation.edges) {
+            return;
+        }
 
         for (int i = 0; i < children.length; i++) {
             String key = getKey(type, children.length, i);
+            if (claims != null) {
+                makeEdgeLabel(key);
+            }
             children[i].addEdge(key, vertex);
         }
 
-        return vertex;
+        statistics.edgesCreated(children.length);
     }
 
     private void makeIndices() {
@@ -85,9 +580,33 @@ public class JanusGraphSorage implements Closeable {
         JanusGraphManagement mgmt = graph.openManagement();
         createIndex(mgmt, "leafIndex", "Leaf", "type", "value");
         createIndex(mgmt, "nodeIndex", "Node", "type", "ids");
+        AtomStatistics.makeSchema(mgmt);
+        if (!mgmt.containsPropertyKey(CHILDREN)) {
+            mgmt.makePropertyKey(CHILDREN).dataType(Long.class).cardinality(Cardinality.SET).make();
+        }
+        createIndex(mgmt, "childrenIndex", "Node", CHILDREN);
+        mgmt.getOrCreatePropertyKey("arity");
+        mgmt.getOrCreatePropertyKey(REFS);
+        mgmt.getOrCreatePropertyKey(SHARDS);
         mgmt.commit();
     }
 
+    // implicit creation of the same edge label by concurrent writers violates schema name uniqueness
+    private void makeEdgeLabel(String label) {
+        if (edgeLabels.contains(label)) {
+            return;
+        }
+
+        synchronized (edgeLabels) {
+            if (!graph.containsEdgeLabel(label)) {
+                JanusGraphManagement mgmt = graph.openManagement();
+                mgmt.makeEdgeLabel(label).make();
+                mgmt.commit();
+            }
+            edgeLabels.add(label);
+        }
+    }
+
     private static void createIndex(JanusGraphManagement mgmt, String indexName, String label, String... keys) {
 
         if (mgmt.getGraphIndex(indexName) == null) {
@@ -103,8 +622,8 @@ public class JanusGraphSorage implements Closeable {
         }
     }
 
-    long getNextId() {
-        return idManager.toVertexId(++currentId);
+    long getNextId(String type, Long firstChild) {
+        return placement.toVertexId(idManager, currentId.incrementAndGet(), type, firstChild);
     }
 
     @Override
@@ -112,16 +631,35 @@ public class JanusGraphSorage implements Closeable {
         graph.close();
     }
 
-    public void printStatistics(GraphTraversalSource g) {
-        long vertices = g.V().count().next();
-        long edges = g.E().count().next();
-        System.out.printf("vertices: %d, edges: %d%n", vertices, edges);
+    public void printStatistics() {
+        statistics.print();
+        templates.print();
+        cache.print();
     }
 
     private String getKey(String type, int arity, int position) {
         return String.format("%s_%d_%d", type, arity, position);
     }
 
+    // the type is length prefixed, so types and values containing ':' can not map to the same key
+    static String getLeafKey(String type, String value) {
+        return String.format("Leaf:%d:%s:%s", type.length(), type, value);
+    }
+
+    static String getNodeKey(String type, long[] ids) {
+        return String.format("Node:%d:%s:%s", type.length(), type, Arrays.toString(ids));
+    }
+
+    // claimed by writers referencing the atom and by the one removing it
+    static String getReferenceKey(Object id) {
+        return "Atom:" + id;
+    }
+
+    // nodes with equal ids of children in different graphs are different atoms
+    static String getNodeKey(String type, long[] ids, long[] shards) {
+        return String.format("Node:%d:%s:%s:%s", type.length(), type, Arrays.toString(ids), Arrays.toString(shards));
+    }
+
     private static long[] getIds(Vertex... vertices) {
         long[] ids = new long[vertices.length];
 
@@ -0,0 +1,39 @@
+package sample;
+
+/**
+ * How a node records its children.
+ * <p>
+ * Edges go from a child to its parent and are labeled by the parent type, arity and child
+ * position, so they store both the outgoing set of the parent and the incoming set of the
+ * child but cost two adjacency entries per child. The "ids" property stores the ordered
+ * outgoing set in one value and is what the node index finds nodes by. The reverse index
+ * is a multi-valued "children" property with a composite index, so the incoming set of
+ * an atom is an index query instead of an adjacency read.
+ */
+public enum LinkRepresentation {
+
+    /**
+     * Child edges only, nodes are found by walking the edges of their first child.
+     */
+    EDGES(true, false, false),
+
+    /**
+     * The "ids" property for outgoing sets and the reverse index for incoming sets.
+     */
+    PROPERTY(false, true, true),
+
+    /**
+     * The "ids" property and child edges.
+     */
+    HYBRID(true, true, false);
+
+    final boolean edges;
+    final boolean idsProperty;
+    final boolean reverseIndex;
+
+    LinkRepresentation(boolean edges, boolean idsProperty, boolean reverseIndex) {
+        this.edges = edges;
+        this.idsProperty = idsProperty;
+        this.reverseIndex = reverseIndex;
+    }
+}
@@ -0,0 +1,120 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Compares link representations by write throughput, size of the stored data and latency
+ * of incoming set queries. Sizes are only reported for the berkeleyje backend.
+ */
+public class LinkRepresentationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String backend = "berkeleyje";
+        String workload = "uniform";
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            backend = args[1];
+        }
+
+        if (args.length > 2) {
+            workload = args[2];
+        }
+
+        System.out.printf("elements: %d, backend: %s, workload: %s%n", N, backend, workload);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        List<String> results = new ArrayList<>();
+        for (LinkRepresentation representation : LinkRepresentation.values()) {
+            File directory = new File("target/representation", representation.name().toLowerCase());
+            IdPlacementBenchmark.delete(directory.toPath());
+
+            long writeTime;
+            long atoms;
+            double queryTime;
+            try (JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend, directory), false,
+                    IdPlacement.SEQUENTIAL, representation)) {
+                long time = System.nanoTime();
+                generator.upload(storage);
+                writeTime = System.nanoTime() - time;
+                atoms = storage.getStatistics().getAtoms();
+                queryTime = measureIncoming(storage);
+            }
+
+            long size = "berkeleyje".equals(backend) ? size(directory.toPath()) : -1;
+            results.add(String.format("%-10s %14.0f %12s %16.2f",
+                    representation, atoms / (writeTime / 1e9),
+                    size < 0 ? "-" : String.format("%.2f", size / 1024.0 / 1024.0), queryTime / 1e3));
+        }
+
+        System.out.printf("%-10s %14s %12s %16s%n", "mode", "atoms/s", "size(MB)", "incoming(us)");
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    // average nanoseconds to read the parents of an atom, the first round warms up
+    private static double measureIncoming(JanusGraphSorage storage) {
+
+        GraphTraversalSource g = storage.traversal();
+        List<Object> ids = g.V().hasLabel("Leaf", "Node").id().toList();
+        storage.rollback();
+
+        long queryTime = 0;
+        for (int round = 0; round < 2; round++) {
+            long time = System.nanoTime();
+            for (Object id : ids) {
+                Iterator<Vertex> parents = storage.getParents(g, g.V(id).next());
+                while (parents.hasNext()) {
+                    parents.next();
+                }
+            }
+            queryTime = System.nanoTime() - time;
+            storage.rollback();
+        }
+        return ids.isEmpty() ? 0 : (double) queryTime / ids.size();
+    }
+
+    private static JanusGraph getGraph(String backend, File directory) {
+        JanusGraphFactory.Builder builder = JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000");
+
+        if ("inmemory".equals(backend)) {
+            builder = builder
+                    .set("ids.authority.wait-time", "5")
+                    .set("ids.renew-timeout", "50");
+        }
+
+        if ("berkeleyje".equals(backend)) {
+            builder = builder.set("storage.directory", directory.getAbsolutePath());
+        }
+
+        return builder.open();
+    }
+
+    static long size(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            return paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package sample;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Uploads the generated workload into the inmemory, berkeleyje and {@link LogStoreManager}
+ * backends and compares upload time, read latency, time to close and reopen the graph and
+ * size on disk. The log store is reopened a second time after appending a torn record to
+ * its last segment, as left by a crash in the middle of a write.
+ */
+public class LogStoreBenchmark {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        List<String> backends = new ArrayList<>();
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        for (int i = 2; i < args.length; i++) {
+            backends.add(args[i]);
+        }
+
+        if (backends.isEmpty()) {
+            backends.add("inmemory");
+            backends.add("berkeleyje");
+            backends.add(LogStoreManager.class.getName());
+        }
+
+        System.out.printf("elements: %d, workload: %s%n", N, workload);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        List<String> results = new ArrayList<>();
+        for (String backend : backends) {
+            File directory = new File("target/logstore", backend.toLowerCase());
+            IdPlacementBenchmark.delete(directory.toPath());
+
+            long uploadTime;
+            long closeTime;
+            long atoms;
+            double readTime;
+
+            JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend, directory));
+            long time = System.nanoTime();
+            generator.upload(storage);
+            uploadTime = System.nanoTime() - time;
+            atoms = countAtoms(storage);
+            readTime = StoreBackendBenchmark.measureReads(storage);
+
+            time = System.nanoTime();
+            storage.close();
+            closeTime = System.nanoTime() - time;
+
+            if ("inmemory".equals(backend)) {
+                results.add(String.format("%-24s %10.0f %9.2f %10.0f %10s %10s %8d %8s",
+                        backend, uploadTime / 1e6, readTime / 1e3, closeTime / 1e6, "-", "-", atoms, "-"));
+                continue;
+            }
+
+            time = System.nanoTime();
+            long reopenedAtoms;
+            try (JanusGraphSorage reopened = new JanusGraphSorage(getGraph(backend, directory))) {
+                reopenedAtoms = countAtoms(reopened);
+            }
+            long reopenTime = System.nanoTime() - time;
+
+            results.add(String.format("%-24s %10.0f %9.2f %10.0f %10.0f %10d %8d %8d",
+                    backend, uploadTime / 1e6, readTime / 1e3, closeTime / 1e6, reopenTime / 1e6,
+                    LinkRepresentationBenchmark.size(directory.toPath()) / 1024, atoms, reopenedAtoms));
+
+            if (LogStoreManager.class.getName().equals(backend)) {
+                tearLastSegment(directory.toPath());
+                // opening the graph opens the store manager twice and the first one already truncates the torn record
+                long discarded = LogStoreManager.getDiscardedBytes(directory);
+                JanusGraph graph = getGraph(backend, directory);
+                try (JanusGraphSorage recovered = new JanusGraphSorage(graph)) {
+                    System.out.printf("after torn write: discarded bytes: %d, atoms: %d%n", discarded, countAtoms(recovered));
+                    ((LogStoreManager) ((StandardJanusGraph) graph).getBackend().getStoreManager()).printStatistics();
+                }
+            }
+        }
+
+        System.out.printf("%-24s %10s %9s %10s %10s %10s %8s %8s%n",
+                "backend", "upload(ms)", "read(us)", "close(ms)", "reopen(ms)", "disk(KB)", "atoms", "reopened");
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static long countAtoms(JanusGraphSorage storage) {
+        long atoms = storage.traversal().V().hasLabel("Leaf", "Node").count().next();
+        storage.rollback();
+        return atoms;
+    }
+
+    // a header announcing more bytes than follow, as if the process died while appending
+    private static void tearLastSegment(Path directory) throws IOException {
+        Path last;
+        try (Stream<Path> paths = Files.list(directory)) {
+            last = paths.filter(path -> path.toString().endsWith(".log")).sorted().reduce((a, b) -> b).get();
+        }
+        Files.write(last, ByteBuffer.allocate(24).putInt(1000).putInt(42).array(), StandardOpenOption.APPEND);
+    }
+
+    private static JanusGraph getGraph(String backend, File directory) {
+        JanusGraphFactory.Builder builder = JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000")
+                .set("ids.authority.wait-time", "5")
+                .set("ids.renew-timeout", "10000");
+
+        if (!"inmemory".equals(backend)) {
+            builder = builder.set("storage.directory", directory.getAbsolutePath());
+        }
+
+        if (LogStoreManager.class.getName().equals(backend)) {
+            // small segments so that the upload goes through compactions
+            builder = builder
+                    .set("storage.log-store.segment-size", 1 << 18)
+                    .set("storage.log-store.compaction-segments", 2);
+        }
+
+        return builder.open();
+    }
+}
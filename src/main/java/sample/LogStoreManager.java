@@ -0,0 +1,648 @@
+package sample;
+
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.BaseTransactionConfig;
+import org.janusgraph.diskstorage.Entry;
+import org.janusgraph.diskstorage.PermanentBackendException;
+import org.janusgraph.diskstorage.StaticBuffer;
+import org.janusgraph.diskstorage.StoreMetaData;
+import org.janusgraph.diskstorage.common.AbstractStoreTransaction;
+import org.janusgraph.diskstorage.common.LocalStoreManager;
+import org.janusgraph.diskstorage.configuration.ConfigNamespace;
+import org.janusgraph.diskstorage.configuration.ConfigOption;
+import org.janusgraph.diskstorage.configuration.Configuration;
+import org.janusgraph.diskstorage.keycolumnvalue.KCVMutation;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyRange;
+import org.janusgraph.diskstorage.keycolumnvalue.StandardStoreFeatures;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreFeatures;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.util.StaticArrayBuffer;
+import org.janusgraph.diskstorage.util.StaticArrayEntry;
+import org.janusgraph.graphdb.configuration.GraphDatabaseConfiguration;
+import org.janusgraph.graphdb.configuration.PreInitializeConfigOptions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Embedded persistent storage backend for single node deployments.
+ * <p>
+ * Every batch of mutations is appended as one checksummed record to a memory-mapped
+ * segment file and then applied to packed in-memory rows (see {@link CompactStoreManager})
+ * which serve all reads. On open the segments are replayed, a torn or corrupt record
+ * ends the replay of its segment. Once enough segments are full a background thread
+ * writes a snapshot of all rows which replaces them.
+ * <p>
+ * The active segment is forced to disk every {@code storage.log-store.sync-interval} ms,
+ * so a process crash loses nothing and a power failure at most the commits of that interval.
+ * <p>
+ * Use with {@code storage.backend=sample.LogStoreManager} and {@code storage.directory}.
+ */
+@PreInitializeConfigOptions
+public class LogStoreManager extends LocalStoreManager implements KeyColumnValueStoreManager {
+
+    public static final ConfigNamespace LOG_STORE_NS = new ConfigNamespace(GraphDatabaseConfiguration.STORAGE_NS,
+            "log-store", "Log structured storage backend options");
+
+    public static final ConfigOption<Integer> SEGMENT_SIZE = new ConfigOption<>(LOG_STORE_NS, "segment-size",
+            "Size in bytes of a memory-mapped log segment", ConfigOption.Type.LOCAL, 64 << 20);
+
+    public static final ConfigOption<Integer> COMPACTION_SEGMENTS = new ConfigOption<>(LOG_STORE_NS, "compaction-segments",
+            "Number of full segments which are compacted into a snapshot", ConfigOption.Type.LOCAL, 4);
+
+    public static final ConfigOption<Long> SYNC_INTERVAL = new ConfigOption<>(LOG_STORE_NS, "sync-interval",
+            "Milliseconds between forcing the active segment to disk", ConfigOption.Type.LOCAL, 100L);
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.log");
+    private static final int HEADER_SIZE = 8;
+    private static final byte MUTATIONS = 1;
+    private static final byte RESET = 2;
+
+    private static final Logger log = LoggerFactory.getLogger(LogStoreManager.class);
+
+    private final Map<String, LogStore> stores = new ConcurrentHashMap<>();
+    private final StoreFeatures features;
+    private final int segmentSize;
+    private final int compactionSegments;
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "log-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // guards the active segment and the order in which records are appended and applied
+    private final Object appendLock = new Object();
+    private Segment active;
+    private int sealedSegments;
+    private boolean compacting;
+    private boolean closed;
+    // reported once by the next mutation or close
+    private Exception compactionFailure;
+
+    private long replayedRecords;
+    private long discardedBytes;
+    private int compactions;
+
+    public LogStoreManager(Configuration configuration) throws BackendException {
+        super(configuration);
+        segmentSize = configuration.get(SEGMENT_SIZE);
+        compactionSegments = configuration.get(COMPACTION_SEGMENTS);
+        features = new StandardStoreFeatures.Builder()
+                .orderedScan(true)
+                .unorderedScan(true)
+                .keyOrdered(true)
+                .persists(true)
+                .batchMutation(true)
+                .optimisticLocking(true)
+                .keyConsistent(GraphDatabaseConfiguration.buildGraphConfiguration())
+                .build();
+
+        try {
+            recover();
+        } catch (IOException e) {
+            throw new PermanentBackendException("Could not recover " + directory, e);
+        }
+
+        long syncInterval = configuration.get(SYNC_INTERVAL);
+        background.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+    }
+
+    private void recover() throws IOException {
+
+        try (Stream<Path> files = Files.list(directory.toPath())) {
+            for (Path path : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".tmp"))::iterator) {
+                // left over by a compaction which did not complete
+                Files.delete(path);
+            }
+        }
+
+        List<Integer> numbers = getSegmentNumbers();
+        int valid = 0;
+        for (int number : numbers) {
+            valid = replay(getSegmentPath(number));
+        }
+
+        if (numbers.isEmpty()) {
+            active = Segment.create(getSegmentPath(1), 1, segmentSize);
+        } else {
+            int last = numbers.get(numbers.size() - 1);
+            active = Segment.reopen(getSegmentPath(last), last, valid, segmentSize);
+            sealedSegments = numbers.size() - 1;
+        }
+    }
+
+    // returns the end of the last valid record
+    private int replay(Path path) throws IOException {
+
+        MappedByteBuffer buffer = map(path);
+        int position = readRecords(buffer, payload -> {
+            apply(payload);
+            replayedRecords++;
+        });
+        discardedBytes += getDiscardedBytes(buffer, position);
+        return position;
+    }
+
+    /**
+     * Counts the bytes a store manager opened on the directory would discard as torn records, without
+     * modifying the segments. Opening the store zeroes them, so this has to run before the store is opened.
+     */
+    public static long getDiscardedBytes(File directory) throws IOException {
+
+        long discarded = 0;
+        try (Stream<Path> files = Files.list(directory.toPath())) {
+            for (Path path : (Iterable<Path>) files.filter(path -> path.toString().endsWith(".log"))::iterator) {
+                MappedByteBuffer buffer = map(path);
+                discarded += getDiscardedBytes(buffer, readRecords(buffer, payload -> { }));
+            }
+        }
+        return discarded;
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // passes the payload of every valid record to the consumer and returns the end of the last one
+    private static int readRecords(ByteBuffer buffer, Consumer<ByteBuffer> consumer) {
+
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (buffer.limit() - position >= HEADER_SIZE) {
+            int length = buffer.getInt(position);
+            int checksum = buffer.getInt(position + 4);
+            if (length <= 0 || length > buffer.limit() - position - HEADER_SIZE) {
+                break;
+            }
+
+            // called through Buffer and ByteBuffer, the covariant overrides of newer JDKs are missing on Java 8
+            ByteBuffer payload = ((ByteBuffer) buffer).duplicate();
+            ((Buffer) payload).position(position + HEADER_SIZE);
+            ((Buffer) payload).limit(position + HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            consumer.accept(payload);
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    // zero bytes after the last record are the unused rest of the segment
+    private static int getDiscardedBytes(ByteBuffer buffer, int position) {
+        for (int i = position; i < buffer.limit(); i++) {
+            if (buffer.get(i) != 0) {
+                return buffer.limit() - position;
+            }
+        }
+        return 0;
+    }
+
+    private void apply(ByteBuffer payload) {
+
+        if (payload.get() == RESET) {
+            for (LogStore store : stores.values()) {
+                store.clear();
+            }
+            return;
+        }
+
+        int storeCount = payload.getInt();
+        for (int s = 0; s < storeCount; s++) {
+            LogStore store = openDatabase(new String(readBytes(payload), StandardCharsets.UTF_8), null);
+            int keyCount = payload.getInt();
+            for (int k = 0; k < keyCount; k++) {
+                StaticBuffer key = StaticArrayBuffer.of(readBytes(payload));
+
+                int additionCount = payload.getInt();
+                List<Entry> additions = new ArrayList<>(additionCount);
+                for (int i = 0; i < additionCount; i++) {
+                    byte[] column = readBytes(payload);
+                    additions.add(StaticArrayEntry.of(StaticArrayBuffer.of(column), StaticArrayBuffer.of(readBytes(payload))));
+                }
+
+                int deletionCount = payload.getInt();
+                List<StaticBuffer> deletions = new ArrayList<>(deletionCount);
+                for (int i = 0; i < deletionCount; i++) {
+                    deletions.add(StaticArrayBuffer.of(readBytes(payload)));
+                }
+
+                store.apply(key, additions, deletions);
+            }
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public StoreTransaction beginTransaction(BaseTransactionConfig config) {
+        return new AbstractStoreTransaction(config) {
+        };
+    }
+
+    @Override
+    public LogStore openDatabase(String name, StoreMetaData.Container metaData) {
+        return stores.computeIfAbsent(name, LogStore::new);
+    }
+
+    @Override
+    public void mutateMany(Map<String, Map<StaticBuffer, KCVMutation>> mutations, StoreTransaction txh) throws BackendException {
+
+        byte[] record = encode(mutations);
+
+        synchronized (appendLock) {
+            if (closed) {
+                throw new PermanentBackendException("Store manager is closed");
+            }
+            checkCompaction();
+            try {
+                if (!active.append(record)) {
+                    roll(record.length);
+                    active.append(record);
+                }
+            } catch (IOException e) {
+                throw new PermanentBackendException("Could not append to " + active.path, e);
+            }
+
+            for (Map.Entry<String, Map<StaticBuffer, KCVMutation>> storeMutations : mutations.entrySet()) {
+                LogStore store = openDatabase(storeMutations.getKey(), null);
+                for (Map.Entry<StaticBuffer, KCVMutation> mutation : storeMutations.getValue().entrySet()) {
+                    store.apply(mutation.getKey(), mutation.getValue().getAdditions(), mutation.getValue().getDeletions());
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(Map<String, Map<StaticBuffer, KCVMutation>> mutations) {
+        RecordWriter writer = new RecordWriter(MUTATIONS);
+        writer.writeInt(mutations.size());
+        for (Map.Entry<String, Map<StaticBuffer, KCVMutation>> storeMutations : mutations.entrySet()) {
+            writer.writeBytes(storeMutations.getKey().getBytes(StandardCharsets.UTF_8));
+            writer.writeInt(storeMutations.getValue().size());
+            for (Map.Entry<StaticBuffer, KCVMutation> mutation : storeMutations.getValue().entrySet()) {
+                writer.writeBuffer(mutation.getKey());
+                writer.writeInt(mutation.getValue().getAdditions().size());
+                for (Entry entry : mutation.getValue().getAdditions()) {
+                    writer.writeBuffer(entry.getColumn());
+                    writer.writeBuffer(entry.getValue());
+                }
+                writer.writeInt(mutation.getValue().getDeletions().size());
+                for (StaticBuffer column : mutation.getValue().getDeletions()) {
+                    writer.writeBuffer(column);
+                }
+            }
+        }
+        return writer.toRecord();
+    }
+
+    // called with the append lock held
+    private void roll(int recordLength) throws IOException {
+        active.seal();
+        sealedSegments++;
+        active = Segment.create(getSegmentPath(active.number + 1), active.number + 1,
+                Math.max(segmentSize, recordLength + HEADER_SIZE));
+
+        if (sealedSegments >= compactionSegments && !compacting) {
+            compacting = true;
+            background.execute(this::compact);
+        }
+    }
+
+    /**
+     * Replaces all sealed segments by a snapshot of the rows.
+     * <p>
+     * Commits arriving while the snapshot is written are appended to newer segments and
+     * may already be part of the snapshot. Replaying them again gives the same rows since
+     * every mutation sets or deletes whole columns.
+     */
+    private void compact() {
+        try {
+            int last;
+            synchronized (appendLock) {
+                if (closed) {
+                    return;
+                }
+                roll(0);
+                last = active.number - 1;
+            }
+
+            Path snapshot = directory.toPath().resolve(String.format("segment-%08d.log.tmp", last));
+            try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                OutputStream out = Channels.newOutputStream(channel);
+                out.write(new RecordWriter(RESET).toRecord());
+                for (LogStore store : stores.values()) {
+                    for (Map.Entry<StaticBuffer, CompactKeyColumnValueStore.Row> row : store.rows()) {
+                        out.write(encode(store.getName(), row.getKey(), row.getValue()));
+                    }
+                }
+                channel.force(true);
+            }
+            Files.move(snapshot, getSegmentPath(last), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+            int removed = 0;
+            for (int number : getSegmentNumbers()) {
+                if (number < last) {
+                    Files.delete(getSegmentPath(number));
+                    removed++;
+                }
+            }
+
+            synchronized (appendLock) {
+                sealedSegments -= removed;
+                compactions++;
+            }
+        } catch (IOException | RuntimeException e) {
+            // the sealed segments are still complete, compaction is retried on the next roll
+            log.error("Compaction of {} failed", directory, e);
+            synchronized (appendLock) {
+                compactionFailure = e;
+            }
+        } finally {
+            synchronized (appendLock) {
+                compacting = false;
+            }
+        }
+    }
+
+    // called with the append lock held
+    private void checkCompaction() throws BackendException {
+        if (compactionFailure != null) {
+            Exception failure = compactionFailure;
+            compactionFailure = null;
+            throw new PermanentBackendException("Compaction of " + directory + " failed", failure);
+        }
+    }
+
+    private static byte[] encode(String store, StaticBuffer key, CompactKeyColumnValueStore.Row row) {
+        RecordWriter writer = new RecordWriter(MUTATIONS);
+        writer.writeInt(1);
+        writer.writeBytes(store.getBytes(StandardCharsets.UTF_8));
+        writer.writeInt(1);
+        writer.writeBuffer(key);
+        writer.writeInt(row.size());
+        for (int i = 0; i < row.size(); i++) {
+            writer.writeBuffer(row.column(i));
+            writer.writeBuffer(row.value(i));
+        }
+        writer.writeInt(0);
+        return writer.toRecord();
+    }
+
+    private void sync() {
+        synchronized (appendLock) {
+            if (!closed) {
+                active.force();
+            }
+        }
+    }
+
+    private List<Integer> getSegmentNumbers() throws IOException {
+        List<Integer> numbers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory.toPath())) {
+            files.forEach(path -> {
+                Matcher matcher = SEGMENT_NAME.matcher(path.getFileName().toString());
+                if (matcher.matches()) {
+                    numbers.add(Integer.parseInt(matcher.group(1)));
+                }
+            });
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+
+    private Path getSegmentPath(int number) {
+        return directory.toPath().resolve(String.format("segment-%08d.log", number));
+    }
+
+    @Override
+    public void close() throws BackendException {
+        background.shutdown();
+        try {
+            background.awaitTermination(1, TimeUnit.MINUTES);
+            synchronized (appendLock) {
+                if (!closed) {
+                    closed = true;
+                    active.seal();
+                }
+                checkCompaction();
+            }
+        } catch (IOException e) {
+            throw new PermanentBackendException("Could not close " + active.path, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new PermanentBackendException("Interrupted while closing", e);
+        } finally {
+            stores.clear();
+        }
+    }
+
+    @Override
+    public void clearStorage() throws BackendException {
+        synchronized (appendLock) {
+            try {
+                active.seal();
+                for (int number : getSegmentNumbers()) {
+                    Files.delete(getSegmentPath(number));
+                }
+                for (LogStore store : stores.values()) {
+                    store.clear();
+                }
+                sealedSegments = 0;
+                active = Segment.create(getSegmentPath(1), 1, segmentSize);
+            } catch (IOException e) {
+                throw new PermanentBackendException("Could not clear " + directory, e);
+            }
+        }
+    }
+
+    @Override
+    public boolean exists() {
+        return !stores.isEmpty();
+    }
+
+    @Override
+    public StoreFeatures getFeatures() {
+        return features;
+    }
+
+    @Override
+    public String getName() {
+        return getClass().getSimpleName() + ":" + directory;
+    }
+
+    @Override
+    public List<KeyRange> getLocalKeyPartition() {
+        throw new UnsupportedOperationException();
+    }
+
+    public void printStatistics() {
+        synchronized (appendLock) {
+            System.out.printf("segments: %d, replayed records: %d, discarded bytes: %d, compactions: %d%n",
+                    sealedSegments + 1, replayedRecords, discardedBytes, compactions);
+        }
+    }
+
+    /**
+     * Store whose direct mutations go through the log like batch mutations.
+     */
+    class LogStore extends CompactKeyColumnValueStore {
+
+        LogStore(String name) {
+            super(name);
+        }
+
+        @Override
+        public void mutate(StaticBuffer key, List<Entry> additions, List<StaticBuffer> deletions, StoreTransaction txh)
+                throws BackendException {
+            mutateMany(Collections.singletonMap(getName(),
+                    Collections.singletonMap(key, new KCVMutation(additions, deletions))), txh);
+        }
+    }
+
+    /**
+     * Memory-mapped segment file, records are appended behind each other and the
+     * zero filled remainder marks the end.
+     */
+    static final class Segment {
+        final Path path;
+        final int number;
+        final FileChannel channel;
+        MappedByteBuffer buffer;
+        int position;
+        boolean dirty;
+
+        private Segment(Path path, int number, FileChannel channel, MappedByteBuffer buffer, int position) {
+            this.path = path;
+            this.number = number;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        static Segment create(Path path, int number, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            return new Segment(path, number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size), 0);
+        }
+
+        // a torn record behind the valid ones is zeroed so that it is not mistaken for an end marker later
+        static Segment reopen(Path path, int number, int valid, int size) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long length = channel.size();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, Math.max(size, length));
+            for (long i = valid; i < length; i++) {
+                buffer.put((int) i, (byte) 0);
+            }
+            return new Segment(path, number, channel, buffer, valid);
+        }
+
+        boolean append(byte[] record) {
+            if (buffer.capacity() - position < record.length + HEADER_SIZE) {
+                return false;
+            }
+            // the payload goes first so that the length never points to a partly written record
+            ByteBuffer target = ((ByteBuffer) buffer).duplicate();
+            ((Buffer) target).position(position + HEADER_SIZE);
+            target.put(record, HEADER_SIZE, record.length - HEADER_SIZE);
+            buffer.putInt(position + 4, ByteBuffer.wrap(record).getInt(4));
+            buffer.putInt(position, ByteBuffer.wrap(record).getInt(0));
+            position += record.length;
+            dirty = true;
+            return true;
+        }
+
+        void force() {
+            if (dirty) {
+                buffer.force();
+                dirty = false;
+            }
+        }
+
+        // trims the file to its records, the segment is not written afterwards
+        void seal() throws IOException {
+            force();
+            buffer = null;
+            channel.truncate(position);
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes a record, the header with length and checksum of the payload is filled in last.
+     */
+    static final class RecordWriter {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        RecordWriter(byte type) {
+            bytes.write(new byte[HEADER_SIZE], 0, HEADER_SIZE);
+            bytes.write(type);
+        }
+
+        void writeInt(int value) {
+            try {
+                out.writeInt(value);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void writeBytes(byte[] value) {
+            writeInt(value.length);
+            bytes.write(value, 0, value.length);
+        }
+
+        void writeBuffer(StaticBuffer buffer) {
+            writeInt(buffer.length());
+            buffer.as((array, offset, limit) -> {
+                bytes.write(array, offset, limit - offset);
+                return null;
+            });
+        }
+
+        byte[] toRecord() {
+            byte[] record = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(record, HEADER_SIZE, record.length - HEADER_SIZE);
+            ByteBuffer.wrap(record).putInt(0, record.length - HEADER_SIZE).putInt(4, (int) crc.getValue());
+            return record;
+        }
+    }
+}
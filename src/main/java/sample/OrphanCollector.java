@@ -0,0 +1,228 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.diskstorage.BackendException;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Background collector of atoms which no node references anymore.
+ * <p>
+ * Candidates are the children released by deleted atoms, see {@link JanusGraphSorage#delete}.
+ * Reference counts are not updated atomically, so every released child is a candidate, not
+ * only the ones whose count dropped to zero. A run takes at most one batch of candidates and
+ * checks and deletes every candidate in its own transaction, which may release its children
+ * for a later run. Runs are spaced by a fixed delay, so at most one batch is deleted per interval.
+ * <p>
+ * The collector does not lock out writers. It needs a concurrent storage, whose claims let
+ * either the deletion of an atom or the writers which referenced it meanwhile fail with a
+ * conflict. A conflicting candidate is queued again and found referenced by a later run.
+ * <p>
+ * Candidates are kept in memory, {@link #scan} finds the orphans left by a previous process.
+ * Reclaimed bytes are the edgestore rows of the deleted atoms, index entries are not included.
+ */
+public class OrphanCollector implements Closeable {
+
+    final JanusGraphSorage storage;
+    final AtomFootprint footprint;
+    final int batchSize;
+    final long intervalMillis;
+    final AtomicReference<Throwable> failure = new AtomicReference<>();
+    ScheduledExecutorService executor;
+
+    long runs;
+    long conflicts;
+    long leaves;
+    long nodes;
+    long revived;
+    long bytes;
+    long time;
+    long maxTime;
+
+    public OrphanCollector(JanusGraphSorage storage, int batchSize, long intervalMillis) {
+        if (!storage.isConcurrent()) {
+            throw new IllegalArgumentException("Storage is not opened in concurrent mode");
+        }
+        this.storage = storage;
+        this.footprint = new AtomFootprint(storage.graph);
+        this.batchSize = batchSize;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "orphan-collector");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::run, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            collect();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Queues all atoms with a reference count of zero or a count which disagrees with their
+     * parents, e.g. after a lost update, which takes a scan of all referenced atoms and their
+     * parents. Call from a thread without an open transaction.
+     */
+    public long scan() {
+        GraphTraversalSource g = storage.traversal();
+        List<Long> ids = new ArrayList<>();
+        for (Iterator<Vertex> atoms = g.V().has(JanusGraphSorage.REFS); atoms.hasNext(); ) {
+            Vertex atom = atoms.next();
+            int refs = atom.value(JanusGraphSorage.REFS);
+            if (refs == 0 || refs != storage.countParents(g, atom)) {
+                ids.add((long) atom.id());
+            }
+        }
+        storage.rollback();
+        ids.forEach(storage.references::offer);
+        return ids.size();
+    }
+
+    /**
+     * Collects one batch of candidates, returns the number of deleted atoms.
+     */
+    public synchronized int collect() {
+
+        AtomReferences references = storage.references;
+        long start = System.nanoTime();
+        int deletedLeaves = 0;
+        int deletedNodes = 0;
+        long deletedBytes = 0;
+
+        // atoms read by an earlier transaction of this thread could be referenced by now
+        storage.rollback();
+
+        Long id;
+        for (int polled = 0; polled < batchSize && (id = references.poll()) != null; polled++) {
+            try {
+                // refs and parents are read after the claims started, a reference committed later conflicts
+                storage.claims.begin();
+                GraphTraversalSource g = storage.traversal();
+                Iterator<Vertex> atoms = g.V(id);
+                if (!atoms.hasNext()) {
+                    storage.rollback();
+                    continue;
+                }
+
+                Vertex atom = atoms.next();
+                Integer counted = atom.<Integer>property(JanusGraphSorage.REFS).orElse(null);
+                if (!storage.isOrphan(g, atom)) {
+                    revived++;
+                    // only a count corrected by the check is worth a commit
+                    if (Objects.equals(counted, atom.<Integer>property(JanusGraphSorage.REFS).orElse(null))) {
+                        storage.rollback();
+                    } else {
+                        storage.commit();
+                    }
+                    continue;
+                }
+
+                boolean leaf = "Leaf".equals(atom.label());
+                long rowBytes = footprint.getRowBytes(storage.idManager.getKey(id));
+                storage.remove(g, atom);
+                storage.commit();
+
+                if (leaf) {
+                    deletedLeaves++;
+                } else {
+                    deletedNodes++;
+                }
+                deletedBytes += rowBytes;
+            } catch (AtomClaims.AtomConflictException e) {
+                storage.rollback();
+                conflicts++;
+                references.offer(id);
+            } catch (RuntimeException | BackendException e) {
+                storage.rollback();
+                references.offer(id);
+                throw e instanceof RuntimeException ? (RuntimeException) e : new IllegalStateException(e);
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        runs++;
+        leaves += deletedLeaves;
+        nodes += deletedNodes;
+        bytes += deletedBytes;
+        time += elapsed;
+        maxTime = Math.max(maxTime, elapsed);
+        return deletedLeaves + deletedNodes;
+    }
+
+    /**
+     * Collects batches until no candidates are left, including the ones released meanwhile,
+     * or a run conflicts with a writer.
+     */
+    public long collectAll() {
+        long deleted = 0;
+        while (storage.references.hasCandidates()) {
+            long before = conflicts;
+            deleted += collect();
+            if (conflicts > before) {
+                break;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Returns true while candidates are queued, waits for a running batch which could
+     * release more.
+     */
+    public synchronized boolean hasCandidates() {
+        return storage.references.hasCandidates();
+    }
+
+    public int getCandidates() {
+        return storage.references.getCandidates();
+    }
+
+    public synchronized long getCollected() {
+        return leaves + nodes;
+    }
+
+    public synchronized long getReclaimedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+    }
+
+    public synchronized void printStatistics() {
+        System.out.printf("collector: runs: %d, conflicts: %d, collected: %d (leaves: %d, nodes: %d), revived: %d, " +
+                        "reclaimed: %d B, time: %.0fms, avg run: %.2fms, max run: %.2fms, candidates: %d%n",
+                runs, conflicts, leaves + nodes, leaves, nodes, revived, bytes, time / 1e6,
+                runs == 0 ? 0 : time / 1e6 / runs, maxTime / 1e6, getCandidates());
+    }
+}
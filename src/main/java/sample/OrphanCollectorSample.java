@@ -0,0 +1,158 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.diskstorage.Backend;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Deletes a share of the top level atoms of an uploaded workload and lets the
+ * {@link OrphanCollector} reclaim the atoms they referenced, first while the same workload
+ * is uploaded again, which revives or recreates the deleted atoms, then on its own. The
+ * upload next to the collector retries units which conflict with a deletion.
+ * <p>
+ * Compares atom counts, store sizes and node lookup latency of every phase and checks
+ * that no node lost a child and every reference count matches the parents of its atom.
+ */
+public class OrphanCollectorSample {
+
+    static final int DELETE_BATCH = 100;
+    static final int LOOKUPS = 1000;
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        double share = 0.5;
+        int batchSize = 100;
+        long interval = 20;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            share = Double.parseDouble(args[2]);
+        }
+
+        if (args.length > 3) {
+            batchSize = Integer.parseInt(args[3]);
+        }
+
+        if (args.length > 4) {
+            interval = Long.parseLong(args[4]);
+        }
+
+        System.out.printf("elements: %d, workload: %s, deleted share: %.2f, batch size: %d, interval: %dms%n",
+                N, workload, share, batchSize, interval);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage(true);
+             OrphanCollector collector = new OrphanCollector(storage, batchSize, interval)) {
+
+            generator.upload(storage);
+            print("uploaded", storage);
+
+            collector.start();
+            long deleted = deleteRoots(storage, share);
+            System.out.printf("deleted top level atoms: %d, candidates: %d%n", deleted, collector.getCandidates());
+
+            long time = System.nanoTime();
+            generator.upload(new ConcurrentUpsert(storage), 1);
+            System.out.printf("upload with collector: %.0fms%n", (System.nanoTime() - time) / 1e6);
+            waitForCandidates(collector);
+            collector.printStatistics();
+            print("uploaded again", storage);
+
+            deleted = deleteRoots(storage, share);
+            System.out.printf("deleted top level atoms: %d, candidates: %d%n", deleted, collector.getCandidates());
+            waitForCandidates(collector);
+            collector.printStatistics();
+            print("collected", storage);
+        }
+    }
+
+    private static long deleteRoots(JanusGraphSorage storage, double share) {
+
+        GraphTraversalSource g = storage.traversal();
+        List<Object> roots = g.V().hasLabel("Leaf", "Node").hasNot(JanusGraphSorage.REFS).id().toList();
+        storage.rollback();
+
+        long deleted = 0;
+        for (int i = 0; i < roots.size() * share; i++) {
+            Iterator<Vertex> atoms = g.V(roots.get(i));
+            if (atoms.hasNext()) {
+                storage.delete(g, atoms.next());
+                if (++deleted % DELETE_BATCH == 0) {
+                    storage.commit();
+                }
+            }
+        }
+        storage.commit();
+        return deleted;
+    }
+
+    private static void waitForCandidates(OrphanCollector collector) throws InterruptedException {
+        long time = System.nanoTime();
+        while (collector.hasCandidates()) {
+            Thread.sleep(10);
+        }
+        System.out.printf("candidates collected after: %.0fms%n", (System.nanoTime() - time) / 1e6);
+    }
+
+    private static void print(String phase, JanusGraphSorage storage) throws Exception {
+
+        GraphTraversalSource g = storage.traversal();
+        long atoms = g.V().hasLabel("Leaf", "Node").count().next();
+
+        long missingChildren = 0;
+        long wrongCounts = 0;
+        List<Vertex> nodes = new ArrayList<>();
+        for (Vertex atom : g.V().hasLabel("Leaf", "Node").toList()) {
+            if ("Node".equals(atom.label())) {
+                nodes.add(atom);
+                for (long child : storage.getChildren(atom)) {
+                    if (!g.V(child).hasNext()) {
+                        missingChildren++;
+                    }
+                }
+            }
+
+            long parents = 0;
+            for (Iterator<Vertex> iterator = storage.getParents(g, atom); iterator.hasNext(); iterator.next()) {
+                parents++;
+            }
+            if (parents != atom.<Integer>property(JanusGraphSorage.REFS).orElse(0)) {
+                wrongCounts++;
+            }
+        }
+
+        long time = System.nanoTime();
+        int lookups = 0;
+        for (int i = 0; i < LOOKUPS && !nodes.isEmpty(); i++) {
+            Vertex node = nodes.get(i % nodes.size());
+            storage.findNode(g, node.value("type"), storage.getChildren(node));
+            lookups++;
+        }
+        double lookupTime = lookups == 0 ? 0 : (System.nanoTime() - time) / 1e3 / lookups;
+        storage.rollback();
+
+        AtomFootprint footprint = new AtomFootprint(storage.graph);
+        footprint.addStores();
+        AtomFootprint.Group edgestore = footprint.stores.get(Backend.EDGESTORE_NAME);
+        AtomFootprint.Group graphindex = footprint.stores.get(Backend.INDEXSTORE_NAME);
+
+        System.out.printf("%s: atoms: %d, counted: %d, missing children: %d, wrong reference counts: %d, " +
+                        "edgestore: %d B, graphindex: %d B, node lookup: %.1fus%n",
+                phase, atoms, storage.getStatistics().getAtoms(), missingChildren, wrongCounts,
+                edgestore.bytes, graphindex.bytes, lookupTime);
+    }
+}
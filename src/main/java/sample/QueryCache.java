@@ -0,0 +1,217 @@
+package sample;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Results of read queries keyed by the shape of the query and its parameters.
+ * <p>
+ * Every entry is tagged with the kinds and types of atoms its result depends on. Writers
+ * report the tags of the atoms they create, a commit then drops only the entries sharing a
+ * tag with the transaction, a rollback just forgets them. A writer bypasses the cache for
+ * queries depending on its own uncommitted atoms. A result is only cached if no commit
+ * invalidated entries since the transaction which loaded it started, otherwise it may come
+ * from a snapshot older than the commit. The cache is bounded by the total number
+ * of cached result elements, least recently used entries are evicted first.
+ */
+public class QueryCache {
+
+    static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final long capacity;
+    private final LinkedHashMap<List<Object>, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Set<List<Object>>> keysByTag = new HashMap<>();
+    private final ThreadLocal<Transaction> transaction = ThreadLocal.withInitial(Transaction::new);
+    private long size;
+    private long invalidations;
+
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+    final LongAdder bypassed = new LongAdder();
+    final LongAdder evicted = new LongAdder();
+    final LongAdder invalidated = new LongAdder();
+
+    public QueryCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public QueryCache(long capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Marks the start of the calling thread's transaction, calls after the first one until the
+     * transaction ends have no effect.
+     */
+    public void begin() {
+        Transaction current = transaction.get();
+        if (current.startedAt < 0) {
+            synchronized (this) {
+                current.startedAt = invalidations;
+            }
+        }
+    }
+
+    public <T> List<T> get(String shape, List<Object> parameters, Set<String> tags, Supplier<List<T>> query) {
+
+        begin();
+        Transaction current = transaction.get();
+        Set<String> written = current.written;
+        if (!written.isEmpty() && !Collections.disjoint(written, tags)) {
+            bypassed.increment();
+            return query.get();
+        }
+
+        List<Object> key = new ArrayList<>(parameters.size() + 1);
+        key.add(shape);
+        key.addAll(parameters);
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.increment();
+                @SuppressWarnings("unchecked")
+                List<T> result = (List<T>) entry.result;
+                return result;
+            }
+        }
+
+        misses.increment();
+        List<T> result = Collections.unmodifiableList(new ArrayList<>(query.get()));
+
+        synchronized (this) {
+            if (current.startedAt == invalidations && result.size() < capacity && !entries.containsKey(key)) {
+                put(key, new Entry(result, tags));
+            }
+        }
+        return result;
+    }
+
+    private void put(List<Object> key, Entry entry) {
+        entries.put(key, entry);
+        for (String tag : entry.tags) {
+            keysByTag.computeIfAbsent(tag, t -> new HashSet<>()).add(key);
+        }
+        size += entry.weight;
+
+        Iterator<Map.Entry<List<Object>, Entry>> eldest = entries.entrySet().iterator();
+        while (size > capacity) {
+            Map.Entry<List<Object>, Entry> next = eldest.next();
+            eldest.remove();
+            removed(next.getKey(), next.getValue());
+            evicted.increment();
+        }
+    }
+
+    private void removed(List<Object> key, Entry entry) {
+        size -= entry.weight;
+        for (String tag : entry.tags) {
+            Set<List<Object>> keys = keysByTag.get(tag);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                keysByTag.remove(tag);
+            }
+        }
+    }
+
+    public void changed(String... tags) {
+        transaction.get().written.addAll(Arrays.asList(tags));
+    }
+
+    public void committed() {
+        Transaction current = transaction.get();
+        current.startedAt = -1;
+        Set<String> tags = current.written;
+        if (tags.isEmpty()) {
+            return;
+        }
+
+        synchronized (this) {
+            invalidations++;
+            for (String tag : tags) {
+                Set<List<Object>> keys = keysByTag.get(tag);
+                if (keys == null) {
+                    continue;
+                }
+                for (List<Object> key : new ArrayList<>(keys)) {
+                    Entry entry = entries.remove(key);
+                    if (entry != null) {
+                        removed(key, entry);
+                        invalidated.increment();
+                    }
+                }
+            }
+        }
+        tags.clear();
+    }
+
+    public void rolledBack() {
+        Transaction current = transaction.get();
+        current.startedAt = -1;
+        current.written.clear();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        keysByTag.clear();
+        size = 0;
+        invalidations++;
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        bypassed.reset();
+        evicted.reset();
+        invalidated.reset();
+    }
+
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long total = hits + misses.sum();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void print() {
+        System.out.printf("query cache: entries: %d, size: %d, hits: %d, misses: %d, hit rate: %.4f, " +
+                        "bypassed: %d, invalidated: %d, evicted: %d%n",
+                getEntries(), getSize(), hits.sum(), misses.sum(), getHitRate(),
+                bypassed.sum(), invalidated.sum(), evicted.sum());
+    }
+
+    static class Transaction {
+        final Set<String> written = new HashSet<>();
+        // invalidations when the transaction started, -1 outside of a transaction
+        long startedAt = -1;
+    }
+
+    static class Entry {
+        final List<?> result;
+        final Set<String> tags;
+        // the key and the list itself count as one element
+        final long weight;
+
+        Entry(List<?> result, Set<String> tags) {
+            this.result = result;
+            this.tags = tags;
+            this.weight = result.size() + 1;
+        }
+    }
+}
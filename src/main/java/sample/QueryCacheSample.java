@@ -0,0 +1,110 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-issues a fixed set of dashboard queries, atom listings overall and by type and parents
+ * of a few leaves, with a small write committed every few rounds. Compares the time of all
+ * rounds served through the {@link QueryCache} against rounds run with an emptied cache and
+ * checks after every write that cached results equal freshly queried ones.
+ */
+public class QueryCacheSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        int rounds = 200;
+        int writeEvery = 20;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            rounds = Integer.parseInt(args[2]);
+        }
+
+        if (args.length > 3) {
+            writeEvery = Integer.parseInt(args[3]);
+        }
+
+        System.out.printf("elements: %d, workload: %s, rounds: %d, write every: %d%n", N, workload, rounds, writeEvery);
+
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage()) {
+            new DataGenerator(Workload.preset(workload), N).upload(storage);
+
+            List<Long> leaves = storage.traversal().V().hasLabel("Leaf").limit(5).id().map(id -> (long) id.get()).toList();
+            storage.rollback();
+            storage.getCache().resetStatistics();
+
+            long uncachedTime = run(storage, leaves, rounds, writeEvery, true, "uncached");
+            storage.getCache().print();
+
+            storage.getCache().clear();
+            storage.getCache().resetStatistics();
+            long cachedTime = run(storage, leaves, rounds, writeEvery, false, "cached");
+            storage.getCache().print();
+
+            System.out.printf("uncached: %.0fms, cached: %.0fms, speedup: %.1f%n",
+                    uncachedTime / 1e6, cachedTime / 1e6, (double) uncachedTime / cachedTime);
+        }
+    }
+
+    private static long run(JanusGraphSorage storage, List<Long> leaves, int rounds, int writeEvery,
+                            boolean clear, String name) {
+
+        long time = 0;
+        boolean consistent = true;
+
+        for (int round = 0; round < rounds; round++) {
+            if (clear) {
+                storage.getCache().clear();
+            }
+
+            long start = System.nanoTime();
+            dashboard(storage, leaves);
+            time += System.nanoTime() - start;
+
+            if ((round + 1) % writeEvery == 0) {
+                write(storage, leaves.get(0), name + round);
+                List<List<Long>> cached = dashboard(storage, leaves);
+                storage.getCache().clear();
+                consistent &= cached.equals(dashboard(storage, leaves));
+            }
+        }
+
+        System.out.printf("%s: consistent after writes: %b%n", name, consistent);
+        return time;
+    }
+
+    // a new leaf of the first type under a new node, parent of the first watched leaf as well
+    private static void write(JanusGraphSorage storage, long watched, String value) {
+        GraphTraversalSource g = storage.traversal();
+        Vertex leaf = storage.getLeaf(g, "Leaf0", value);
+        storage.getNode(g, "Node0", leaf, g.V(watched).next());
+        storage.commit();
+    }
+
+    private static List<List<Long>> dashboard(JanusGraphSorage storage, List<Long> leaves) {
+        GraphTraversalSource g = storage.traversal();
+        List<List<Long>> results = new ArrayList<>();
+        results.add(storage.getAtomIds(g));
+        for (String type : new String[]{"Leaf0", "Node0", "Node1"}) {
+            results.add(storage.getAtomIds(g, type));
+        }
+        for (long leaf : leaves) {
+            results.add(storage.getParentIds(g, leaf));
+        }
+        storage.rollback();
+        return results;
+    }
+}
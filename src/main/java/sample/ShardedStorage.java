@@ -0,0 +1,293 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Routes atoms to one of several independently opened graphs by a hash of their content.
+ * <p>
+ * A node references its children by shard qualified ids, since edges can not cross graphs.
+ * The "ids" property holds the ids of the children and the "shards" property their shards. Every shard is served by its own
+ * writer thread which owns the shard's thread bound transaction. Commits are atomic
+ * per shard only.
+ */
+public class ShardedStorage implements Closeable {
+
+    final JanusGraphSorage[] shards;
+    final ExecutorService[] writers;
+
+    public ShardedStorage(int shards, IntFunction<JanusGraph> graphs) {
+        this.shards = new JanusGraphSorage[shards];
+        this.writers = new ExecutorService[shards];
+
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new JanusGraphSorage(graphs.apply(i));
+            this.writers[i] = Executors.newSingleThreadExecutor();
+        }
+    }
+
+    public int getShards() {
+        return shards.length;
+    }
+
+    public Ref getLeaf(String type, String value) {
+        return getAtoms(Arrays.asList(AtomKey.leaf(type, value)))[0];
+    }
+
+    public Ref getNode(String type, Ref... children) {
+        return getAtoms(Arrays.asList(AtomKey.node(type, children)))[0];
+    }
+
+    /**
+     * Finds or creates the given atoms. Atoms are grouped by shard and every group is
+     * resolved by the shard's writer in parallel with the others.
+     */
+    public Ref[] getAtoms(List<AtomKey> keys) {
+
+        List<List<Integer>> positions = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            positions.add(new ArrayList<>());
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            positions.get(getShard(keys.get(i))).add(i);
+        }
+
+        List<Future<Ref[]>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            final int shard = i;
+            final List<Integer> shardPositions = positions.get(i);
+            futures.add(submit(shard, storage -> {
+                Ref[] refs = new Ref[shardPositions.size()];
+                for (int j = 0; j < refs.length; j++) {
+                    refs[j] = resolve(storage, shard, keys.get(shardPositions.get(j)));
+                }
+                return refs;
+            }));
+        }
+
+        Ref[] result = new Ref[keys.size()];
+        for (int i = 0; i < shards.length; i++) {
+            Ref[] refs = get(futures.get(i));
+            List<Integer> shardPositions = positions.get(i);
+            for (int j = 0; j < refs.length; j++) {
+                result[shardPositions.get(j)] = refs[j];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Reads the given atoms gathering them from all shards in parallel.
+     */
+    public AtomKey[] lookup(List<Ref> refs) {
+
+        List<Future<AtomKey>> futures = new ArrayList<>(refs.size());
+        for (Ref ref : refs) {
+            futures.add(submit(ref.shard, storage -> toKey(storage.traversal().V(ref.id).next())));
+        }
+
+        AtomKey[] keys = new AtomKey[refs.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = get(futures.get(i));
+        }
+        return keys;
+    }
+
+    public void commit() {
+        List<Future<Object>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            futures.add(submit(i, storage -> {
+                storage.commit();
+                return null;
+            }));
+        }
+
+        for (Future<Object> future : futures) {
+            get(future);
+        }
+    }
+
+    public Map<String, Long> getCounters() {
+        Map<String, Long> counters = new TreeMap<>();
+        for (JanusGraphSorage shard : shards) {
+            for (Map.Entry<String, Long> entry : shard.getStatistics().getCounters().entrySet()) {
+                counters.merge(entry.getKey(), entry.getValue(), Long::sum);
+            }
+        }
+        return counters;
+    }
+
+    public void printStatistics() {
+        for (int i = 0; i < shards.length; i++) {
+            AtomStatistics statistics = shards[i].getStatistics();
+            System.out.printf("shard %d: atoms: %d, edges: %d%n", i, statistics.getAtoms(), statistics.getEdges());
+        }
+        Map<String, Long> counters = getCounters();
+        System.out.printf("total atoms: %d%n", counters.getOrDefault(AtomStatistics.ATOMS, 0L));
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < shards.length; i++) {
+            get(submit(i, storage -> {
+                storage.rollback();
+                return null;
+            }));
+            writers[i].shutdown();
+            shards[i].close();
+        }
+    }
+
+    int getShard(AtomKey key) {
+        return Math.floorMod(mix(key.hash()), shards.length);
+    }
+
+    private <T> Future<T> submit(int shard, Function<JanusGraphSorage, T> task) {
+        JanusGraphSorage storage = shards[shard];
+        return writers[shard].submit(() -> task.apply(storage));
+    }
+
+    private static Ref resolve(JanusGraphSorage storage, int shard, AtomKey key) {
+
+        if (key.isLeaf()) {
+            Vertex v = storage.getLeaf(storage.traversal(), key.type, key.value);
+            return new Ref(shard, (long) v.id());
+        }
+
+        Vertex v = storage.getNodeByIds(storage.traversal(), key.type, toShards(key.children), toIds(key.children));
+        return new Ref(shard, (long) v.id());
+    }
+
+    private static AtomKey toKey(Vertex v) {
+        String type = v.property("type").value().toString();
+        if ("Leaf".equals(v.label())) {
+            return AtomKey.leaf(type, v.property("value").value().toString());
+        }
+        return AtomKey.node(type, toRefs(v.value(JanusGraphSorage.SHARDS), v.value("ids")));
+    }
+
+    static long[] toShards(Ref... refs) {
+        long[] shards = new long[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            shards[i] = refs[i].shard;
+        }
+        return shards;
+    }
+
+    static long[] toIds(Ref... refs) {
+        long[] ids = new long[refs.length];
+        for (int i = 0; i < refs.length; i++) {
+            ids[i] = refs[i].id;
+        }
+        return ids;
+    }
+
+    static Ref[] toRefs(long[] shards, long[] ids) {
+        Ref[] refs = new Ref[ids.length];
+        for (int i = 0; i < refs.length; i++) {
+            refs[i] = new Ref((int) shards[i], ids[i]);
+        }
+        return refs;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    public static class Ref {
+        final int shard;
+        final long id;
+
+        public Ref(int shard, long id) {
+            this.shard = shard;
+            this.id = id;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Ref)) {
+                return false;
+            }
+            Ref ref = (Ref) obj;
+            return shard == ref.shard && id == ref.id;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * shard + Long.hashCode(id);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d:%d", shard, id);
+        }
+    }
+
+    public static class AtomKey {
+        final String type;
+        final String value;
+        final Ref[] children;
+
+        private AtomKey(String type, String value, Ref[] children) {
+            this.type = type;
+            this.value = value;
+            this.children = children;
+        }
+
+        public static AtomKey leaf(String type, String value) {
+            return new AtomKey(type, value, new Ref[0]);
+        }
+
+        public static AtomKey node(String type, Ref... children) {
+            return new AtomKey(type, null, children);
+        }
+
+        public boolean isLeaf() {
+            return value != null;
+        }
+
+        int hash() {
+            return isLeaf()
+                    ? 31 * type.hashCode() + value.hashCode()
+                    : 31 * type.hashCode() + Arrays.hashCode(children);
+        }
+
+        @Override
+        public String toString() {
+            return isLeaf()
+                    ? String.format("%s('%s')", type, value)
+                    : String.format("%s(%s)", type, Arrays.toString(children));
+        }
+    }
+}
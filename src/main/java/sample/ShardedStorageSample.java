@@ -0,0 +1,60 @@
+package sample;
+
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+
+import java.io.File;
+
+public class ShardedStorageSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 10;
+        int shards = 4;
+        String backend = "inmemory";
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            shards = Integer.parseInt(args[1]);
+        }
+
+        if (args.length > 2) {
+            backend = args[2];
+        }
+
+        System.out.printf("elements: %d, shards: %d, backend: %s%n", N, shards, backend);
+
+        DataGenerator generator = new DataGenerator(3, 3, 3, 3, N);
+
+        final String storageBackend = backend;
+        long time = System.currentTimeMillis();
+        try (ShardedStorage storage = new ShardedStorage(shards, shard -> getGraph(storageBackend, shard))) {
+            generator.upload(storage);
+        }
+
+        System.out.printf("elapsed time: %dms%n", System.currentTimeMillis() - time);
+    }
+
+    public static JanusGraph getGraph(String backend, int shard) {
+        JanusGraphFactory.Builder builder = JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000");
+
+        if ("inmemory".equals(backend)) {
+            builder = builder
+                    .set("ids.authority.wait-time", "5")
+                    .set("ids.renew-timeout", "50");
+        }
+
+        if ("berkeleyje".equals(backend)) {
+            File directory = new File("target/shards", String.format("shard-%d", shard));
+            builder = builder.set("storage.directory", directory.getAbsolutePath());
+        }
+
+        return builder.open();
+    }
+}
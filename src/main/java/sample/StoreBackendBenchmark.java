@@ -0,0 +1,169 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.diskstorage.Backend;
+import org.janusgraph.diskstorage.BackendException;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStore;
+import org.janusgraph.diskstorage.keycolumnvalue.KeyColumnValueStoreManager;
+import org.janusgraph.diskstorage.keycolumnvalue.KeySliceQuery;
+import org.janusgraph.diskstorage.keycolumnvalue.StoreTransaction;
+import org.janusgraph.diskstorage.util.BufferUtil;
+import org.janusgraph.diskstorage.util.StandardBaseTransactionConfig;
+import org.janusgraph.diskstorage.util.time.TimestampProviders;
+import org.janusgraph.graphdb.database.StandardJanusGraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares storage backends by heap retained per stored atom, upload time, latency of
+ * reading all properties and edges of an atom through the graph and latency of the
+ * underlying slice query on the edge store.
+ * Run with a fixed heap, e.g. -Xms1g -Xmx1g. Backends measured later in the same JVM run
+ * with code compiled for the earlier ones, pass a single backend to measure it alone.
+ */
+public class StoreBackendBenchmark {
+
+    static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        List<String> backends = new ArrayList<>();
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        for (int i = 2; i < args.length; i++) {
+            backends.add(args[i]);
+        }
+
+        if (backends.isEmpty()) {
+            backends.add("inmemory");
+            backends.add(CompactStoreManager.class.getName());
+        }
+
+        System.out.printf("elements: %d, workload: %s%n", N, workload);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        // classes loaded and code compiled by the first run would be accounted to it
+        DataGenerator warmup = new DataGenerator(Workload.preset(workload), Math.min(N, 500));
+        for (String backend : backends) {
+            try (JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend))) {
+                warmup.upload(storage);
+                measureReads(storage);
+                measureSlices(storage);
+            }
+        }
+
+        List<String> results = new ArrayList<>();
+        for (String backend : backends) {
+            long uploadTime;
+            long atoms;
+            long heap;
+            double readTime;
+            double sliceTime;
+
+            try (JanusGraphSorage storage = new JanusGraphSorage(getGraph(backend))) {
+                // measured against the opened empty graph so that schema and caches are not counted
+                long emptyHeap = usedHeap();
+                long time = System.nanoTime();
+                generator.upload(storage);
+                uploadTime = System.nanoTime() - time;
+
+                atoms = storage.getStatistics().getAtoms();
+                heap = usedHeap() - emptyHeap;
+                readTime = measureReads(storage);
+                sliceTime = measureSlices(storage);
+            }
+
+            results.add(String.format("%-30s %12.0f %12.2f %10.2f %10.2f",
+                    backend, (double) heap / atoms, uploadTime / 1e6, readTime / 1e3, sliceTime / 1e3));
+        }
+
+        System.out.printf("%-30s %12s %12s %10s %10s%n", "backend", "heap/atom(B)", "upload(ms)", "read(us)", "slice(us)");
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    // average nanoseconds to read all relations of an atom through the graph, the best of several rounds
+    static double measureReads(JanusGraphSorage storage) {
+
+        GraphTraversalSource g = storage.traversal();
+        List<Object> ids = getAtomIds(storage);
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            for (Object id : ids) {
+                g.V(id).bothE().count().next();
+                g.V(id).properties().count().next();
+            }
+            best = Math.min(best, System.nanoTime() - time);
+            storage.rollback();
+        }
+        return ids.isEmpty() ? 0 : (double) best / ids.size();
+    }
+
+    // average nanoseconds of a slice query for all columns of an atom's row in the edge store
+    private static double measureSlices(JanusGraphSorage storage) throws BackendException {
+
+        StandardJanusGraph graph = (StandardJanusGraph) storage.graph;
+        KeyColumnValueStoreManager manager = (KeyColumnValueStoreManager) graph.getBackend().getStoreManager();
+        KeyColumnValueStore store = manager.openDatabase(Backend.EDGESTORE_NAME);
+        StoreTransaction tx = manager.beginTransaction(StandardBaseTransactionConfig.of(TimestampProviders.MICRO));
+
+        List<KeySliceQuery> queries = new ArrayList<>();
+        for (Object id : getAtomIds(storage)) {
+            queries.add(new KeySliceQuery(storage.idManager.getKey((long) id), BufferUtil.zeroBuffer(1), BufferUtil.oneBuffer(32)));
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            for (KeySliceQuery query : queries) {
+                store.getSlice(query, tx);
+            }
+            best = Math.min(best, System.nanoTime() - time);
+        }
+        tx.commit();
+        return queries.isEmpty() ? 0 : (double) best / queries.size();
+    }
+
+    private static List<Object> getAtomIds(JanusGraphSorage storage) {
+        List<Object> ids = storage.traversal().V().hasLabel("Leaf", "Node").id().toList();
+        storage.rollback();
+        return ids;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static JanusGraph getGraph(String backend) {
+        return JanusGraphFactory.build()
+                .set("storage.backend", backend)
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000")
+                .set("ids.authority.wait-time", "5")
+                // full collections between runs must not time out id block renewal
+                .set("ids.renew-timeout", "10000")
+                // the database level cache would hide the backend
+                .set("cache.db-cache", "false")
+                .open();
+    }
+}
@@ -0,0 +1,219 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs 1..N concurrent writers together with a fixed number of readers against one shared
+ * concurrent storage and reports how throughput, latency and conflicts change.
+ * <p>
+ * Every write is one unit of two leaves and a node over them. With probability "overlap"
+ * a leaf value comes from a pool shared by all writers, otherwise from the writer's own
+ * pool, so the overlap controls how often writers race for the same atom. After each run
+ * the stored atoms are scanned for duplicates.
+ */
+public class StressBenchmark {
+
+    static final int NODE_TYPES = 4;
+
+    public static void main(String[] args) throws Exception {
+
+        int maxWriters = 8;
+        int readers = 2;
+        int operations = 100;
+        int keys = 100;
+
+        if (args.length > 0) {
+            maxWriters = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            readers = Integer.parseInt(args[1]);
+        }
+
+        if (args.length > 2) {
+            operations = Integer.parseInt(args[2]);
+        }
+
+        if (args.length > 3) {
+            keys = Integer.parseInt(args[3]);
+        }
+
+        System.out.printf("max writers: %d, readers: %d, operations per writer: %d, keys per pool: %d%n",
+                maxWriters, readers, operations, keys);
+
+        System.out.printf("%7s %7s %10s %8s %10s %9s %9s %9s %9s %9s %9s %8s %7s %10s%n",
+                "overlap", "writers", "writes/s", "scaling", "reads/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)",
+                "rp99(ms)", "conflicts", "retries", "failed", "duplicates");
+
+        for (double overlap : new double[]{0, 0.5, 1}) {
+            double baseline = 0;
+            for (int writers = 1; writers <= maxWriters; writers *= 2) {
+                double throughput = run(overlap, writers, readers, operations, keys, baseline);
+                if (writers == 1) {
+                    baseline = throughput;
+                }
+            }
+        }
+    }
+
+    // returns the write throughput, scaling is reported relative to the single writer baseline
+    private static double run(double overlap, int writers, int readers, int operations, int keys,
+                              double baseline) throws Exception {
+
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage(true)) {
+
+            ConcurrentUpsert upsert = new ConcurrentUpsert(storage);
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicLong reads = new AtomicLong();
+            long[][] writeLatencies = new long[writers][];
+            List<long[]> readLatencies = new ArrayList<>();
+
+            ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+            try {
+                List<Future<long[]>> readerFutures = new ArrayList<>(readers);
+                for (int r = 0; r < readers; r++) {
+                    final long seed = 1000 + r;
+                    readerFutures.add(executor.submit(() -> read(storage, writing, reads, seed, writers, keys)));
+                }
+
+                long time = System.nanoTime();
+                List<Future<long[]>> writerFutures = new ArrayList<>(writers);
+                for (int w = 0; w < writers; w++) {
+                    final int writer = w;
+                    writerFutures.add(executor.submit(() -> write(upsert, writer, operations, overlap, keys)));
+                }
+
+                for (int w = 0; w < writers; w++) {
+                    writeLatencies[w] = writerFutures.get(w).get();
+                }
+                long elapsed = System.nanoTime() - time;
+
+                writing.set(false);
+                for (Future<long[]> future : readerFutures) {
+                    readLatencies.add(future.get());
+                }
+
+                long[] write = merge(Arrays.asList(writeLatencies));
+                long[] read = merge(readLatencies);
+                double throughput = write.length / (elapsed / 1e9);
+
+                System.out.printf("%7.2f %7d %10.1f %8.2f %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9d %8d %7d %10d%n",
+                        overlap, writers, throughput, baseline == 0 ? 1 : throughput / baseline,
+                        reads.get() / (elapsed / 1e9),
+                        percentile(write, 0.5), percentile(write, 0.99), percentile(write, 0.999),
+                        percentile(write, 1), percentile(read, 0.99),
+                        upsert.getConflicts(), upsert.getRetries(), upsert.getFailures(),
+                        countDuplicates(storage));
+                return throughput;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static long[] write(ConcurrentUpsert upsert, int writer, int operations, double overlap, int keys) {
+
+        JanusGraphSorage storage = upsert.getStorage();
+        SplittableRandom random = new SplittableRandom(writer);
+        long[] latencies = new long[operations];
+        int completed = 0;
+
+        for (int i = 0; i < operations; i++) {
+            String first = value(random, writer, overlap, keys);
+            String second = value(random, writer, overlap, keys);
+            String type = "Node" + random.nextInt(NODE_TYPES);
+
+            long time = System.nanoTime();
+            try {
+                upsert.execute(g -> storage.getNode(g, type,
+                        storage.getLeaf(g, "Leaf", first),
+                        storage.getLeaf(g, "Leaf", second)));
+            } catch (AtomClaims.AtomConflictException e) {
+                // counted as a failure by the upsert
+                continue;
+            }
+            latencies[completed++] = System.nanoTime() - time;
+        }
+        return Arrays.copyOf(latencies, completed);
+    }
+
+    private static String value(SplittableRandom random, int writer, double overlap, int keys) {
+        int key = random.nextInt(keys);
+        return random.nextDouble() < overlap ? "shared-" + key : "w" + writer + "-" + key;
+    }
+
+    private static long[] read(JanusGraphSorage storage, AtomicBoolean writing, AtomicLong reads,
+                               long seed, int writers, int keys) {
+
+        SplittableRandom random = new SplittableRandom(seed);
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        while (writing.get()) {
+            String value = random.nextBoolean()
+                    ? "shared-" + random.nextInt(keys)
+                    : "w" + random.nextInt(writers) + "-" + random.nextInt(keys);
+
+            long time = System.nanoTime();
+            storage.findLeaf(storage.traversal(), "Leaf", value);
+            storage.rollback();
+
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - time;
+            reads.incrementAndGet();
+        }
+        return Arrays.copyOf(latencies, count);
+    }
+
+    // atoms with the same key stored more than once
+    private static long countDuplicates(JanusGraphSorage storage) {
+
+        GraphTraversalSource g = storage.traversal();
+        Set<String> seen = new HashSet<>();
+        long duplicates = 0;
+
+        Iterator<Vertex> vertices = g.V().hasLabel("Leaf", "Node");
+        while (vertices.hasNext()) {
+            Vertex v = vertices.next();
+            String key = "Leaf".equals(v.label())
+                    ? "Leaf:" + v.value("type") + ":" + v.value("value")
+                    : "Node:" + v.value("type") + ":" + Arrays.toString(storage.getChildren(v));
+            if (!seen.add(key)) {
+                duplicates++;
+            }
+        }
+        storage.rollback();
+        return duplicates;
+    }
+
+    static long[] merge(List<long[]> latencies) {
+        long[] merged = latencies.stream().flatMapToLong(Arrays::stream).toArray();
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    // in milliseconds
+    static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+}
@@ -0,0 +1,98 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.Step;
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.step.HasContainerHolder;
+import org.apache.tinkerpop.gremlin.process.traversal.step.TraversalParent;
+import org.apache.tinkerpop.gremlin.process.traversal.step.util.HasContainer;
+import org.apache.tinkerpop.gremlin.structure.Graph;
+
+import java.util.List;
+
+/**
+ * A traversal compiled once and executed many times with different parameter values.
+ * <p>
+ * The traversal is built with {@link #parameter(int)} placeholders in place of the values
+ * of its has() filters. Strategies are applied once, after which the placeholders are found
+ * in the (possibly folded) has containers and their predicates are rebound on every
+ * execution. A template holds iteration state and must not be shared between threads.
+ */
+public class TraversalTemplate<S, E> {
+
+    private static final String PLACEHOLDER = "\u0000$";
+
+    final Traversal.Admin<S, E> traversal;
+    final P<Object>[] parameters;
+
+    public TraversalTemplate(Traversal<S, E> traversal, int parameters) {
+        this.traversal = traversal.asAdmin();
+        // generic arrays can only be created raw
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        P<Object>[] bound = new P[parameters];
+        this.parameters = bound;
+
+        this.traversal.applyStrategies();
+        bindParameters(this.traversal);
+
+        for (int i = 0; i < parameters; i++) {
+            if (this.parameters[i] == null) {
+                throw new IllegalArgumentException("Parameter " + i + " is not used as a has() value");
+            }
+        }
+    }
+
+    public static String parameter(int index) {
+        return PLACEHOLDER + index;
+    }
+
+    /**
+     * Rebinds the parameters and restarts the traversal on the given graph or transaction.
+     */
+    public Traversal<S, E> execute(Graph graph, Object... values) {
+        if (values.length != parameters.length) {
+            throw new IllegalArgumentException("Expected " + parameters.length + " values but got " + values.length);
+        }
+
+        for (int i = 0; i < values.length; i++) {
+            parameters[i].setValue(values[i]);
+        }
+
+        traversal.reset();
+        traversal.setGraph(graph);
+        return traversal;
+    }
+
+    /**
+     * Returns the next result of the execution or null if there is none.
+     */
+    public E next(Graph graph, Object... values) {
+        Traversal<S, E> iter = execute(graph, values);
+        return iter.hasNext() ? iter.next() : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void bindParameters(Traversal.Admin<?, ?> traversal) {
+        for (Step<?, ?> step : traversal.getSteps()) {
+            if (step instanceof HasContainerHolder) {
+                for (HasContainer container : ((HasContainerHolder) step).getHasContainers()) {
+                    Object value = container.getPredicate().getValue();
+                    if (value instanceof String && ((String) value).startsWith(PLACEHOLDER)) {
+                        int index = Integer.parseInt(((String) value).substring(PLACEHOLDER.length()));
+                        parameters[index] = (P<Object>) container.getPredicate();
+                    }
+                }
+            }
+
+            if (step instanceof TraversalParent) {
+                TraversalParent parent = (TraversalParent) step;
+                for (Traversal.Admin<?, ?> child : parent.getGlobalChildren()) {
+                    bindParameters(child);
+                }
+                for (Traversal.Admin<?, ?> child : parent.getLocalChildren()) {
+                    bindParameters(child);
+                }
+            }
+        }
+    }
+}
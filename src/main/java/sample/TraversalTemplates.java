@@ -0,0 +1,52 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Per thread cache of {@link TraversalTemplate}s keyed by the shape of the query.
+ */
+public class TraversalTemplates {
+
+    final ThreadLocal<Map<String, TraversalTemplate<?, ?>>> templates = ThreadLocal.withInitial(HashMap::new);
+    final LongAdder hits = new LongAdder();
+    final LongAdder misses = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <S, E> TraversalTemplate<S, E> get(String shape, int parameters, Supplier<Traversal<S, E>> builder) {
+        Map<String, TraversalTemplate<?, ?>> cache = templates.get();
+
+        TraversalTemplate<S, E> template = (TraversalTemplate<S, E>) cache.get(shape);
+        if (template != null) {
+            hits.increment();
+            return template;
+        }
+
+        misses.increment();
+        template = new TraversalTemplate<>(builder.get(), parameters);
+        cache.put(shape, template);
+        return template;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    public void print() {
+        System.out.printf("templates: hits: %d, misses: %d, hit rate: %.4f%n", getHits(), getMisses(), getHitRate());
+    }
+}
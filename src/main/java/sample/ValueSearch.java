@@ -0,0 +1,121 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.P;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+import org.janusgraph.core.PropertyKey;
+import org.janusgraph.core.attribute.Text;
+import org.janusgraph.core.schema.JanusGraphManagement;
+import org.janusgraph.core.schema.Mapping;
+import org.janusgraph.core.schema.SchemaAction;
+import org.janusgraph.core.schema.SchemaStatus;
+import org.janusgraph.graphdb.database.management.ManagementSystem;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Prefix, regex and token search on leaf values through a mixed index kept in an embedded
+ * Lucene directory. The composite leaf index only answers exact matches of type and value,
+ * any other predicate on values scans all vertices.
+ * <p>
+ * Lucene maps a key either as a whole string, for prefix and regex, or as text, for lower
+ * cased tokens, so values go into two indices. Mixed indices need typed keys, so
+ * {@link #makeIndex} has to run before the storage creates "type" and "value" implicitly.
+ */
+public class ValueSearch {
+
+    static final String BACKEND = "search";
+    static final String INDEX = "valueSearch";
+    static final String TOKEN_INDEX = "valueTokens";
+
+    public static JanusGraphFactory.Builder configure(JanusGraphFactory.Builder builder, File directory) {
+        return builder
+                .set("index." + BACKEND + ".backend", "lucene")
+                .set("index." + BACKEND + ".directory", directory.getAbsolutePath());
+    }
+
+    /**
+     * Creates the mixed indices, values stored before are indexed by reindex jobs.
+     */
+    public static void makeIndex(JanusGraph graph) throws InterruptedException, ExecutionException {
+
+        JanusGraphManagement mgmt = graph.openManagement();
+        if (mgmt.getGraphIndex(INDEX) != null) {
+            mgmt.rollback();
+            return;
+        }
+
+        boolean existing = mgmt.containsPropertyKey("value");
+        PropertyKey type = getStringKey(mgmt, "type");
+        PropertyKey value = getStringKey(mgmt, "value");
+
+        mgmt.buildIndex(INDEX, Vertex.class)
+                .indexOnly(mgmt.getOrCreateVertexLabel("Leaf"))
+                .addKey(type, Mapping.STRING.asParameter())
+                .addKey(value, Mapping.STRING.asParameter())
+                .buildMixedIndex(BACKEND);
+        mgmt.buildIndex(TOKEN_INDEX, Vertex.class)
+                .indexOnly(mgmt.getOrCreateVertexLabel("Leaf"))
+                .addKey(value, Mapping.TEXT.asParameter())
+                .buildMixedIndex(BACKEND);
+        mgmt.commit();
+
+        if (existing) {
+            for (String index : new String[]{INDEX, TOKEN_INDEX}) {
+                ManagementSystem.awaitGraphIndexStatus(graph, index).status(SchemaStatus.REGISTERED).call();
+                mgmt = graph.openManagement();
+                mgmt.updateIndex(mgmt.getGraphIndex(index), SchemaAction.REINDEX).get();
+                mgmt.commit();
+            }
+        }
+    }
+
+    private static PropertyKey getStringKey(JanusGraphManagement mgmt, String name) {
+
+        if (!mgmt.containsPropertyKey(name)) {
+            return mgmt.makePropertyKey(name).dataType(String.class).make();
+        }
+
+        PropertyKey key = mgmt.getPropertyKey(name);
+        if (key.dataType() != String.class) {
+            mgmt.rollback();
+            throw new IllegalStateException(String.format("Property key %s is of type %s, the value search index " +
+                    "has to be created before the first atom is stored", name, key.dataType().getSimpleName()));
+        }
+        return key;
+    }
+
+    /**
+     * Leaves whose value starts with the prefix.
+     */
+    public static List<Vertex> prefix(GraphTraversalSource g, String prefix) {
+        return find(g, Text.textPrefix(prefix)).toList();
+    }
+
+    /**
+     * Leaves whose whole value matches the regular expression.
+     */
+    public static List<Vertex> regex(GraphTraversalSource g, String regex) {
+        return find(g, Text.textRegex(regex)).toList();
+    }
+
+    /**
+     * Leaves with the token in their value, tokens are matched case insensitive.
+     */
+    public static List<Vertex> token(GraphTraversalSource g, String token) {
+        return find(g, Text.textContains(token)).toList();
+    }
+
+    public static List<Vertex> prefix(GraphTraversalSource g, String type, String prefix) {
+        return find(g, Text.textPrefix(prefix)).has("type", type).toList();
+    }
+
+    static GraphTraversal<Vertex, Vertex> find(GraphTraversalSource g, P<String> predicate) {
+        return g.V().hasLabel("Leaf").has("value", predicate);
+    }
+}
@@ -0,0 +1,110 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+import org.janusgraph.core.JanusGraph;
+import org.janusgraph.core.JanusGraphFactory;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Uploads the generated workload into one graph with the {@link ValueSearch} index and one
+ * without, and compares latency and results of prefix, regex and token searches on leaf
+ * values answered by the index against the same searches scanning all vertices.
+ */
+public class ValueSearchBenchmark {
+
+    static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 5000;
+        String workload = "events";
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        System.out.printf("elements: %d, workload: %s%n", N, workload);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        File directory = new File("target/valuesearch");
+        IdPlacementBenchmark.delete(directory.toPath());
+
+        try (JanusGraphSorage indexed = getIndexedStorage(directory);
+             JanusGraphSorage scanned = DataStorageSample.getInMemoryStorage()) {
+
+            long time = System.nanoTime();
+            generator.upload(indexed);
+            System.out.printf("upload with index: %.0fms%n", (System.nanoTime() - time) / 1e6);
+
+            time = System.nanoTime();
+            generator.upload(scanned);
+            System.out.printf("upload without index: %.0fms%n", (System.nanoTime() - time) / 1e6);
+
+            System.out.printf("%-10s %-16s %8s %12s %12s %8s%n", "search", "argument", "results", "index(ms)", "scan(ms)", "same");
+            measure("prefix", "Value1", ValueSearch::prefix, indexed, scanned);
+            measure("prefix", "Value123", ValueSearch::prefix, indexed, scanned);
+            measure("regex", "Value[0-9]{2}", ValueSearch::regex, indexed, scanned);
+            measure("regex", "Value.*77.*", ValueSearch::regex, indexed, scanned);
+            // a stored value, fixed values may match nothing depending on the workload
+            String token = ((String) scanned.traversal().V().hasLabel("Leaf").values("value").next()).toLowerCase();
+            scanned.rollback();
+            measure("token", token, ValueSearch::token, indexed, scanned);
+        }
+    }
+
+    private static void measure(String search, String argument,
+                                BiFunction<GraphTraversalSource, String, List<Vertex>> query,
+                                JanusGraphSorage indexed, JanusGraphSorage scanned) {
+
+        long indexTime = Long.MAX_VALUE;
+        long scanTime = Long.MAX_VALUE;
+        List<Vertex> found = null;
+        List<Vertex> scannedFound = null;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long time = System.nanoTime();
+            found = query.apply(indexed.traversal(), argument);
+            indexTime = Math.min(indexTime, System.nanoTime() - time);
+            indexed.rollback();
+
+            time = System.nanoTime();
+            scannedFound = query.apply(scanned.traversal(), argument);
+            scanTime = Math.min(scanTime, System.nanoTime() - time);
+            scanned.rollback();
+        }
+
+        // both graphs got the same custom ids
+        boolean same = getIds(found).equals(getIds(scannedFound));
+        System.out.printf("%-10s %-16s %8d %12.2f %12.2f %8b%n",
+                search, argument, found.size(), indexTime / 1e6, scanTime / 1e6, same);
+    }
+
+    private static HashSet<Object> getIds(List<Vertex> vertices) {
+        HashSet<Object> ids = new HashSet<>();
+        vertices.forEach(vertex -> ids.add(vertex.id()));
+        return ids;
+    }
+
+    private static JanusGraphSorage getIndexedStorage(File directory) throws Exception {
+        JanusGraphFactory.Builder builder = JanusGraphFactory.build()
+                .set("storage.backend", "inmemory")
+                .set("graph.set-vertex-id", "true")
+                .set("ids.block-size", "100000")
+                .set("ids.authority.wait-time", "5")
+                .set("ids.renew-timeout", "50");
+
+        JanusGraph graph = ValueSearch.configure(builder, directory).open();
+        ValueSearch.makeIndex(graph);
+        return new JanusGraphSorage(graph);
+    }
+}
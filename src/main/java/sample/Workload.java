@@ -0,0 +1,127 @@
+package sample;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Distributions of the atoms produced by {@link DataGenerator}.
+ * <p>
+ * Types, values and arities are drawn from Zipf distributions: rank k is chosen with
+ * probability proportional to 1 / k^skew, so a skew of 0 is uniform and larger skews
+ * concentrate on the first ranks. A node child is with probability {@code reuse} a subtree
+ * generated before instead of a new one, where recently generated subtrees are preferred
+ * according to {@code reuseSkew}. Reuse and skew are what drive the dedup hit ratio.
+ */
+public class Workload {
+
+    static final Map<String, Workload> PRESETS = new LinkedHashMap<>();
+
+    static {
+        // the original tiny uniform vocabulary
+        preset(uniform("uniform", 3, 3, 3, 3));
+        // few hot types and values, deep trees built of shared fragments: mostly dedup hits
+        preset(new Workload("ontology", 50, 1.2, 1000, 1.1, 4, 1.0, 5, 0.6, 1.0));
+        // wide vocabulary of values with a long tail and little structural sharing
+        preset(new Workload("events", 20, 0.8, 100000, 0.9, 3, 0.5, 3, 0.1, 1.2));
+        // moderately skewed types and values with some reuse of recent subtrees
+        preset(new Workload("mixed", 30, 1.0, 10000, 1.0, 4, 0.8, 4, 0.3, 1.0));
+    }
+
+    final String name;
+    final int types;
+    final double typeSkew;
+    final int values;
+    final double valueSkew;
+    final int maxWidth;
+    final double widthSkew;
+    final int maxHeight;
+    final double reuse;
+    final double reuseSkew;
+
+    public Workload(String name, int types, double typeSkew, int values, double valueSkew,
+                    int maxWidth, double widthSkew, int maxHeight, double reuse, double reuseSkew) {
+        this.name = name;
+        this.types = types;
+        this.typeSkew = typeSkew;
+        this.values = values;
+        this.valueSkew = valueSkew;
+        this.maxWidth = maxWidth;
+        this.widthSkew = widthSkew;
+        this.maxHeight = maxHeight;
+        this.reuse = reuse;
+        this.reuseSkew = reuseSkew;
+    }
+
+    public static Workload uniform(String name, int types, int values, int maxWidth, int maxHeight) {
+        return new Workload(name, types, 0, values, 0, maxWidth, 0, maxHeight, 0, 0);
+    }
+
+    public static Workload preset(String name) {
+        Workload workload = PRESETS.get(name);
+        if (workload == null) {
+            throw new IllegalArgumentException("Unknown workload: " + name + ", expected one of " + PRESETS.keySet());
+        }
+        return workload;
+    }
+
+    public static Iterable<Workload> presets() {
+        return PRESETS.values();
+    }
+
+    private static void preset(Workload workload) {
+        PRESETS.put(workload.name, workload);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(types: %d^%.1f, values: %d^%.1f, width: %d^%.1f, height: %d, reuse: %.2f^%.1f)",
+                name, types, typeSkew, values, valueSkew, maxWidth, widthSkew, maxHeight, reuse, reuseSkew);
+    }
+
+    /**
+     * Samples ranks 0..n-1 of a Zipf distribution by a binary search over the cumulative
+     * distribution. A skew of 0 draws a single nextInt.
+     */
+    static class Zipf {
+        final int n;
+        final double[] cdf;
+
+        Zipf(int n, double skew) {
+            this.n = n;
+            if (skew == 0) {
+                this.cdf = null;
+                return;
+            }
+
+            this.cdf = new double[n];
+            double sum = 0;
+            for (int k = 0; k < n; k++) {
+                sum += 1 / Math.pow(k + 1, skew);
+                cdf[k] = sum;
+            }
+            for (int k = 0; k < n; k++) {
+                cdf[k] /= sum;
+            }
+        }
+
+        int sample(SplittableRandom random) {
+            return sample(random, n);
+        }
+
+        // samples from the first "bound" ranks only
+        int sample(SplittableRandom random, int bound) {
+            if (cdf == null) {
+                return random.nextInt(bound);
+            }
+            double u = random.nextDouble() * cdf[bound - 1];
+            int k = Arrays.binarySearch(cdf, 0, bound, u);
+            return k >= 0 ? k : Math.min(-k - 1, bound - 1);
+        }
+    }
+}
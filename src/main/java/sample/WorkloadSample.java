@@ -0,0 +1,45 @@
+package sample;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Prints the dedup hit ratio of every workload preset without storing anything and checks
+ * that parallel generation produces the same data as serial generation.
+ */
+public class WorkloadSample {
+
+    public static void main(String[] args) {
+
+        int N = 10000;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            threads = Integer.parseInt(args[1]);
+        }
+
+        System.out.printf("elements: %d, threads: %d%n", N, threads);
+
+        for (Workload workload : Workload.presets()) {
+            long time = System.currentTimeMillis();
+            DataGenerator serial = new DataGenerator(workload, N, 42, 1);
+            long serialTime = System.currentTimeMillis() - time;
+
+            time = System.currentTimeMillis();
+            DataGenerator parallel = new DataGenerator(workload, N, 42, threads);
+            long parallelTime = System.currentTimeMillis() - time;
+
+            parallel.printWorkloadStatistics();
+            System.out.printf("generation: serial %dms, parallel %dms, same data: %b%n",
+                    serialTime, parallelTime, toStrings(serial).equals(toStrings(parallel)));
+        }
+    }
+
+    private static List<String> toStrings(DataGenerator generator) {
+        return generator.dataNodes.stream().map(Object::toString).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,213 @@
+package sample;
+
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSource;
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Buffers newly created atoms in memory and writes them to the graph in batches.
+ * <p>
+ * Atoms are identified by vertex ids which are allocated when the atom is first requested,
+ * so a buffered atom can be referenced by later atoms before it exists in the graph.
+ * Lookups are answered from the buffer first and only go to the graph index for atoms
+ * which are not buffered. A flush writes all buffered atoms in id order in one
+ * transaction, so either the whole batch is stored or none of it. A failed batch stays
+ * buffered and is retried by the next flush, the ids handed out for it stay valid as long
+ * as a later flush or {@link #close} succeeds.
+ * <p>
+ * The buffer age is only checked when an atom is buffered, there is no background flusher.
+ * A writer which pauses can call {@link #flushIfExpired} to bound the age of its batch.
+ * <p>
+ * Not thread safe, use one buffer per writer on a storage which is not concurrent.
+ */
+public class WriteBehindBuffer implements Closeable {
+
+    final JanusGraphSorage storage;
+    final int maxSize;
+    final long maxAgeOnInsertNanos;
+
+    final Map<String, Long> keys = new HashMap<>();
+    final Set<Long> ids = new HashSet<>();
+    final List<BufferedAtom> atoms = new ArrayList<>();
+    long firstBufferedAt;
+
+    long bufferHits;
+    long graphHits;
+    long created;
+    long flushes;
+    long flushTime;
+
+    /**
+     * @param maxAgeOnInsertMillis a batch older than this is flushed when the next atom is buffered
+     */
+    public WriteBehindBuffer(JanusGraphSorage storage, int maxSize, long maxAgeOnInsertMillis) {
+        if (storage.isConcurrent()) {
+            throw new IllegalArgumentException("Write behind buffer requires a storage which is not concurrent");
+        }
+        this.storage = storage;
+        this.maxSize = maxSize;
+        this.maxAgeOnInsertNanos = maxAgeOnInsertMillis * 1_000_000;
+    }
+
+    public long getLeaf(String type, String value) {
+
+        String key = JanusGraphSorage.getLeafKey(type, value);
+        Long id = keys.get(key);
+        if (id != null) {
+            bufferHits++;
+            return id;
+        }
+
+        Vertex vertex = storage.findLeaf(storage.traversal(), type, value);
+        if (vertex != null) {
+            graphHits++;
+            return (long) vertex.id();
+        }
+
+        return buffer(key, new BufferedAtom(storage.getNextId(type, null), type, value, null));
+    }
+
+    public long getNode(String type, long... children) {
+
+        String key = JanusGraphSorage.getNodeKey(type, children);
+        Long id = keys.get(key);
+        if (id != null) {
+            bufferHits++;
+            return id;
+        }
+
+        // a node with a buffered child can not be in the graph yet
+        if (!hasBufferedChild(children)) {
+            Vertex vertex = storage.findNode(storage.traversal(), type, children);
+            if (vertex != null) {
+                graphHits++;
+                return (long) vertex.id();
+            }
+        }
+
+        Long firstChild = children.length > 0 ? children[0] : null;
+        return buffer(key, new BufferedAtom(storage.getNextId(type, firstChild), type, null, children));
+    }
+
+    private boolean hasBufferedChild(long[] children) {
+        for (long child : children) {
+            if (ids.contains(child)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long buffer(String key, BufferedAtom atom) {
+
+        if (atoms.isEmpty()) {
+            firstBufferedAt = System.nanoTime();
+        }
+
+        keys.put(key, atom.id);
+        ids.add(atom.id);
+        atoms.add(atom);
+        created++;
+
+        if (atoms.size() >= maxSize) {
+            flush();
+        } else {
+            flushIfExpired();
+        }
+        return atom.id;
+    }
+
+    /**
+     * Flushes the buffered atoms if the oldest of them is older than the maximum age.
+     */
+    public void flushIfExpired() {
+        if (!atoms.isEmpty() && System.nanoTime() - firstBufferedAt >= maxAgeOnInsertNanos) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes all buffered atoms in one transaction, keeps them buffered if it fails.
+     */
+    public void flush() {
+
+        if (atoms.isEmpty()) {
+            return;
+        }
+
+        long time = System.nanoTime();
+
+        // atoms are created in id order and connected once all of them exist
+        atoms.sort((a, b) -> Long.compare(a.id, b.id));
+
+        GraphTraversalSource g = storage.traversal();
+        Map<Long, Vertex> vertices = new HashMap<>(atoms.size() * 2);
+        try {
+            for (BufferedAtom atom : atoms) {
+                Vertex vertex = atom.isLeaf()
+                        ? storage.addLeaf(g, atom.id, atom.type, atom.value)
+                        : storage.addNode(g, atom.id, atom.type, atom.children.length, atom.children);
+                vertices.put(atom.id, vertex);
+            }
+
+            for (BufferedAtom atom : atoms) {
+                if (atom.isLeaf()) {
+                    continue;
+                }
+                Vertex[] children = new Vertex[atom.children.length];
+                for (int i = 0; i < children.length; i++) {
+                    Vertex child = vertices.get(atom.children[i]);
+                    children[i] = child != null ? child : g.V(atom.children[i]).next();
+                }
+                storage.addEdges(atom.type, children, vertices.get(atom.id));
+            }
+
+            storage.commit();
+        } catch (RuntimeException e) {
+            storage.rollback();
+            throw e;
+        }
+
+        keys.clear();
+        ids.clear();
+        atoms.clear();
+
+        flushes++;
+        flushTime += System.nanoTime() - time;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    public void printStatistics() {
+        System.out.printf("buffer hits: %d, graph hits: %d, created: %d, flushes: %d, avg flush: %.2fms%n",
+                bufferHits, graphHits, created, flushes, flushes == 0 ? 0 : flushTime / 1e6 / flushes);
+    }
+
+    static class BufferedAtom {
+        final long id;
+        final String type;
+        final String value;
+        final long[] children;
+
+        BufferedAtom(long id, String type, String value, long[] children) {
+            this.id = id;
+            this.type = type;
+            this.value = value;
+            this.children = children;
+        }
+
+        boolean isLeaf() {
+            return children == null;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package sample;
+
+public class WriteBehindSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 10;
+        int batchSize = 1000;
+        long maxAge = 1000;
+        String workload = "uniform";
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            batchSize = Integer.parseInt(args[1]);
+        }
+
+        if (args.length > 2) {
+            maxAge = Long.parseLong(args[2]);
+        }
+
+        if (args.length > 3) {
+            workload = args[3];
+        }
+
+        System.out.printf("elements: %d, batch size: %d, max age on insert: %dms%n", N, batchSize, maxAge);
+
+        DataGenerator generator = new DataGenerator(Workload.preset(workload), N);
+
+        long time = System.currentTimeMillis();
+        try (JanusGraphSorage storage = DataStorageSample.getInMemoryStorage();
+             WriteBehindBuffer buffer = new WriteBehindBuffer(storage, batchSize, maxAge)) {
+            generator.upload(buffer);
+        }
+
+        System.out.printf("elapsed time: %dms%n", System.currentTimeMillis() - time);
+    }
+}
@@ -9,6 +9,7 @@ import org.janusgraph.core.JanusGraphFactory;
 import org.janusgraph.core.schema.JanusGraphManagement;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.idmanagement.IDManager;
+import sample.AtomStatistics;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -69,11 +70,16 @@ public class DataStorageSample {
         long currentId = 0;
         final JanusGraph graph;
         final IDManager idManager;
+        final AtomStatistics statistics = new AtomStatistics();
 
         public JanusGraphStorage(JanusGraph graph) {
             this.graph = graph;
             this.idManager = ((StandardJanusGraph) graph).getIDManager();
 //            makeIndices();
+            makeStatisticsSchema();
+            statistics.load(graph.traversal());
+            graph.tx().rollback();
+            currentId = statistics.getLastId();
         }
 
         public GraphTraversalSource traversal() {
@@ -81,7 +87,15 @@ public class DataStorageSample {
         }
 
         public void commit() {
-            graph.tx().commit();
+            try {
+                statistics.prepareCommit(graph.traversal(), this::getNextId, () -> currentId);
+                graph.tx().commit();
+            } catch (RuntimeException e) {
+                graph.tx().rollback();
+                statistics.rolledBack();
+                throw e;
+            }
+            statistics.committed();
         }
 
         public Vertex getLeaf(GraphTraversalSource g, String type, String value) {
@@ -96,6 +110,8 @@ public class DataStorageSample {
                 return iter.next();
             }
 
+            statistics.leafCreated(type);
+
             return g
                     .addV("Leaf")
                     .property(T.id, getNextId())
@@ -129,6 +145,9 @@ public class DataStorageSample {
                 children[i].addEdge(key, vertex);
             }
 
+            statistics.nodeCreated(type, children.length);
+            statistics.edgesCreated(children.length);
+
             return vertex;
         }
 
@@ -140,6 +159,13 @@ public class DataStorageSample {
             mgmt.commit();
         }
 
+        private void makeStatisticsSchema() {
+
+            JanusGraphManagement mgmt = graph.openManagement();
+            AtomStatistics.makeSchema(mgmt);
+            mgmt.commit();
+        }
+
         private static void createIndex(JanusGraphManagement mgmt, String indexName, String label, String... keys) {
 
             if (mgmt.getGraphIndex(indexName) == null) {
@@ -165,10 +191,7 @@ public class DataStorageSample {
         }
 
         public void printStatistics() {
-            GraphTraversalSource g = graph.traversal();
-            long vertices = g.V().count().next();
-            long edges = g.E().count().next();
-            System.out.printf("vertices: %d, edges: %d%n", vertices, edges);
+            statistics.print();
         }
 
         private String getKey(String type, int arity, int position) {
@@ -0,0 +1,466 @@
+package sample4;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import sample4.DataStorageSample.JanusGraphStorage;
+import sample4.DataStorageSample.JanusGraphStorageTransaction;
+import sample4.DataStorageSample.RawAtom;
+import sample4.DataStorageSample.RawLink;
+import sample4.DataStorageSample.RawNode;
+
+/**
+ * Reads atom files written in the textual form of DataGenerator.DataNode and RawAtom:
+ * {@code Type(child child ...)} for links and {@code Type('value')} or {@code Type(value)} for nodes.
+ * Children can be separated by whitespace, commas and brackets.
+ * <p>
+ * The file is memory mapped and tokenized in place: structure tokens are never turned into
+ * Strings and type names and values go through a per thread symbol table, so a repeated
+ * name is decoded only once. Every record has to start at the beginning of a line and
+ * nested atoms have to be indented or be on the same line, which lets the file be split
+ * into ranges at record boundaries and parsed by several threads.
+ */
+public class AtomFileLoader {
+
+    // a single mapping can not exceed 2GB
+    static final long MAX_RANGE = 1L << 30;
+
+    final Path path;
+
+    final LongAdder records = new LongAdder();
+    final LongAdder atoms = new LongAdder();
+
+    public AtomFileLoader(Path path) {
+        this.path = path;
+    }
+
+    public static void main(String[] args) throws Exception {
+
+        if (args.length == 0) {
+            System.out.println("usage: AtomFileLoader <file> [threads]");
+            return;
+        }
+
+        Path path = Paths.get(args[0]);
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        AtomFileLoader loader = new AtomFileLoader(path);
+
+        long time = System.currentTimeMillis();
+        try (JanusGraphStorage storage = DataStorageSample.getInMemoryStorage()) {
+            loader.load(storage, threads, 100);
+        }
+        System.out.printf("records: %d, atoms: %d, elapsed time: %dms%n",
+                loader.getRecords(), loader.getAtoms(), System.currentTimeMillis() - time);
+    }
+
+    public long getRecords() {
+        return records.sum();
+    }
+
+    public long getAtoms() {
+        return atoms.sum();
+    }
+
+    /**
+     * Parses the file with the given number of threads and writes records into the storage
+     * from a single writer, one transaction per batch of records.
+     */
+    public void load(JanusGraphStorage storage, int threads, int batchSize) throws IOException, InterruptedException {
+
+        final Object end = new Object();
+        BlockingQueue<Object> queue = new ArrayBlockingQueue<>(batchSize * 16);
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Thread writer = new Thread(() -> {
+            List<RawAtom> batch = new ArrayList<>(batchSize);
+            try {
+                Object item;
+                while ((item = queue.take()) != end) {
+                    if (failure.get() != null) {
+                        // keep draining so parsing threads are not blocked on the full queue
+                        continue;
+                    }
+                    batch.add((RawAtom) item);
+                    if (batch.size() >= batchSize) {
+                        write(storage, batch, failure);
+                    }
+                }
+                write(storage, batch, failure);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "atom-writer");
+        writer.start();
+
+        try {
+            parse(threads, atom -> {
+                try {
+                    queue.put(atom);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            });
+        } finally {
+            queue.put(end);
+            writer.join();
+        }
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static void write(JanusGraphStorage storage, List<RawAtom> batch, AtomicReference<RuntimeException> failure) {
+        if (batch.isEmpty() || failure.get() != null) {
+            return;
+        }
+
+        try (JanusGraphStorageTransaction tx = storage.tx()) {
+            for (RawAtom atom : batch) {
+                if (atom instanceof RawNode) {
+                    tx.getNode((RawNode) atom);
+                } else {
+                    tx.getLink((RawLink) atom);
+                }
+            }
+            tx.commit();
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Parses the file splitting it into ranges at record boundaries,
+     * the consumer is called concurrently from the parsing threads.
+     */
+    public void parse(int threads, Consumer<RawAtom> consumer) throws IOException, InterruptedException {
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            long size = channel.size();
+            int parts = (int) Math.max(threads, (size + MAX_RANGE - 1) / MAX_RANGE);
+            List<long[]> ranges = split(channel, parts);
+
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<?>> futures = new ArrayList<>(ranges.size());
+                for (long[] range : ranges) {
+                    futures.add(executor.submit(() -> {
+                        parse(channel, range[0], range[1], consumer);
+                        return null;
+                    }));
+                }
+                for (Future<?> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                throw new IOException(e.getCause());
+            } finally {
+                executor.shutdown();
+            }
+        }
+    }
+
+    List<long[]> split(FileChannel channel, int parts) throws IOException {
+
+        long size = channel.size();
+        List<long[]> ranges = new ArrayList<>(parts);
+
+        long start = 0;
+        for (int i = 1; i <= parts && start < size; i++) {
+            long end = i == parts ? size : findRecordStart(channel, size * i / parts);
+            if (end - start > MAX_RANGE) {
+                String msg = String.format("Record range [%d, %d) does not fit into a single mapping", start, end);
+                throw new IOException(msg);
+            }
+            if (end > start) {
+                ranges.add(new long[]{start, end});
+                start = end;
+            }
+        }
+        return ranges;
+    }
+
+    // records start after a line break with a character which can not continue a nested atom
+    static long findRecordStart(FileChannel channel, long position) throws IOException {
+
+        long size = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        byte previous = 0;
+
+        while (position < size) {
+            ((Buffer) buffer).clear();
+            int read = channel.read(buffer, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = buffer.get(i);
+                if (previous == '\n' && !isWhitespace(b) && b != ')') {
+                    return position + i;
+                }
+                previous = b;
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    void parse(FileChannel channel, long start, long end, Consumer<RawAtom> consumer) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        Parser parser = new Parser(buffer, new SymbolTable());
+
+        RawAtom atom;
+        while ((atom = parser.next()) != null) {
+            records.increment();
+            atoms.add(parser.parsedAtoms);
+            parser.parsedAtoms = 0;
+            consumer.accept(atom);
+        }
+    }
+
+    static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\n' || b == '\r' || b == '\t';
+    }
+
+    static boolean isSeparator(byte b) {
+        return isWhitespace(b) || b == ',' || b == '[' || b == ']';
+    }
+
+    static boolean isNameChar(byte b) {
+        return !isSeparator(b) && b != '(' && b != ')' && b != '\'';
+    }
+
+    static class Parser {
+        final ByteBuffer buffer;
+        final SymbolTable symbols;
+        final int limit;
+        int position;
+        long parsedAtoms;
+
+        Parser(ByteBuffer buffer, SymbolTable symbols) {
+            this.buffer = buffer;
+            this.symbols = symbols;
+            this.limit = buffer.limit();
+        }
+
+        RawAtom next() throws IOException {
+            skipSeparators();
+            return position < limit ? atom() : null;
+        }
+
+        private RawAtom atom() throws IOException {
+
+            String type = name();
+            skipSeparators();
+            expect('(');
+            skipSeparators();
+
+            if (peek() == '\'') {
+                String value = quoted();
+                skipSeparators();
+                expect(')');
+                return node(type, value);
+            }
+
+            List<RawAtom> children = new ArrayList<>();
+            while (true) {
+                skipSeparators();
+                if (peek() == ')') {
+                    position++;
+                    break;
+                }
+
+                int start = position;
+                int length = nameLength();
+                position += length;
+                skipSeparators();
+
+                if (peek() == '(') {
+                    position = start;
+                    children.add(atom());
+                } else if (children.isEmpty()) {
+                    // unquoted value: Type(value)
+                    String value = symbols.get(buffer, start, length);
+                    expect(')');
+                    return node(type, value);
+                } else {
+                    throw error("child atom");
+                }
+            }
+
+            parsedAtoms++;
+            return new RawLink(type, children.toArray(new RawAtom[0]));
+        }
+
+        private RawNode node(String type, String value) {
+            parsedAtoms++;
+            return new RawNode(type, value);
+        }
+
+        private String name() throws IOException {
+            int length = nameLength();
+            if (length == 0) {
+                throw error("atom type");
+            }
+            String name = symbols.get(buffer, position, length);
+            position += length;
+            return name;
+        }
+
+        private int nameLength() {
+            int end = position;
+            while (end < limit && isNameChar(buffer.get(end))) {
+                end++;
+            }
+            return end - position;
+        }
+
+        private String quoted() throws IOException {
+            expect('\'');
+            int start = position;
+            while (position < limit && buffer.get(position) != '\'') {
+                position++;
+            }
+            String value = symbols.get(buffer, start, position - start);
+            expect('\'');
+            return value;
+        }
+
+        private void skipSeparators() {
+            while (position < limit && isSeparator(buffer.get(position))) {
+                position++;
+            }
+        }
+
+        private byte peek() throws IOException {
+            if (position >= limit) {
+                throw error("more input");
+            }
+            return buffer.get(position);
+        }
+
+        private void expect(char c) throws IOException {
+            if (peek() != c) {
+                throw error(String.format("'%c'", c));
+            }
+            position++;
+        }
+
+        private IOException error(String expected) {
+            return new IOException(String.format("Expected %s at offset %d of the range", expected, position));
+        }
+    }
+
+    /**
+     * Maps byte ranges of the buffer to Strings without allocating for names seen before.
+     */
+    static class SymbolTable {
+
+        static final int MAX_SYMBOLS = 1 << 20;
+
+        byte[][] keys = new byte[1024][];
+        String[] values = new String[1024];
+        int size;
+
+        String get(ByteBuffer buffer, int offset, int length) {
+
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + buffer.get(offset + i);
+            }
+
+            int mask = keys.length - 1;
+            for (int index = hash & mask; ; index = (index + 1) & mask) {
+                byte[] key = keys[index];
+                if (key == null) {
+                    String value = decode(buffer, offset, length);
+                    if (size < MAX_SYMBOLS) {
+                        put(index, copy(buffer, offset, length), value);
+                    }
+                    return value;
+                }
+                if (equals(key, buffer, offset, length)) {
+                    return values[index];
+                }
+            }
+        }
+
+        private void put(int index, byte[] key, String value) {
+            keys[index] = key;
+            values[index] = value;
+            size++;
+
+            if (size * 2 > keys.length) {
+                byte[][] oldKeys = keys;
+                String[] oldValues = values;
+                keys = new byte[oldKeys.length * 2][];
+                values = new String[oldKeys.length * 2];
+                int mask = keys.length - 1;
+                for (int i = 0; i < oldKeys.length; i++) {
+                    if (oldKeys[i] != null) {
+                        int j = hash(oldKeys[i]) & mask;
+                        while (keys[j] != null) {
+                            j = (j + 1) & mask;
+                        }
+                        keys[j] = oldKeys[i];
+                        values[j] = oldValues[i];
+                    }
+                }
+            }
+        }
+
+        private static int hash(byte[] key) {
+            int hash = 1;
+            for (byte b : key) {
+                hash = 31 * hash + b;
+            }
+            return hash;
+        }
+
+        private static boolean equals(byte[] key, ByteBuffer buffer, int offset, int length) {
+            if (key.length != length) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (key[i] != buffer.get(offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static byte[] copy(ByteBuffer buffer, int offset, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = buffer.get(offset + i);
+            }
+            return bytes;
+        }
+
+        private static String decode(ByteBuffer buffer, int offset, int length) {
+            return new String(copy(buffer, offset, length), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package sample4;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.tinkerpop.gremlin.structure.Vertex;
+
+import sample.AtomFootprint;
+import sample.DataGenerator;
+import sample.Workload;
+import sample4.DataStorageSample.JanusGraphStorage;
+import sample4.DataStorageSample.JanusGraphStorageTransaction;
+
+/**
+ * Loads an exported workload through {@link AtomFileLoader} and reports backend and heap
+ * bytes per Node and per Link of every arity, together with the average length of the
+ * textual "prop_ids" of links against eight bytes per id of a binary encoding.
+ */
+public class AtomFootprintSample {
+
+    public static void main(String[] args) throws Exception {
+
+        int N = 2000;
+        String workload = "uniform";
+        long plannedAtoms = 100_000_000;
+
+        if (args.length > 0) {
+            N = Integer.parseInt(args[0]);
+        }
+
+        if (args.length > 1) {
+            workload = args[1];
+        }
+
+        if (args.length > 2) {
+            plannedAtoms = Long.parseLong(args[2]);
+        }
+
+        Path file = Paths.get("target/footprint4.txt");
+        new DataGenerator(Workload.preset(workload), N).export(file);
+        System.out.printf("elements: %d, workload: %s, file: %s%n", N, workload, file);
+
+        // bytes per atom need the whole workload in the graph, unprepared link lookups of the
+        // loader store only a small part of the atoms of the file
+        try (JanusGraphStorage storage = new JanusGraphStorage(DataStorageSample.getInMemoryGraph(), true)) {
+            new AtomFileLoader(file).load(storage, 1, 100);
+
+            AtomFootprint footprint = new AtomFootprint(storage.graph);
+            Map<String, long[]> idsLengths = new TreeMap<>();
+
+            List<Vertex> atoms = storage.graph.traversal().V().toList();
+            for (Vertex atom : atoms) {
+                String group = JanusGraphStorageTransaction.LABEL_NODE;
+                if (JanusGraphStorageTransaction.LABEL_LINK.equals(atom.label())) {
+                    String ids = atom.value(JanusGraphStorageTransaction.IDS);
+                    group = JanusGraphStorageTransaction.LABEL_LINK + "/" + DataStorageSample.toIds(ids).length;
+                    long[] lengths = idsLengths.computeIfAbsent(group, g -> new long[2]);
+                    lengths[0]++;
+                    lengths[1] += ids.length();
+                }
+                footprint.add(group, storage.idManager.getKey((long) atom.id()));
+            }
+            storage.graph.tx().rollback();
+            footprint.addStores();
+
+            footprint.print("sample4, inmemory", plannedAtoms);
+            idsLengths.forEach((group, lengths) -> System.out.printf("%-12s prop_ids: %.1f chars, binary: %d B%n",
+                    group, (double) lengths[1] / lengths[0], 8 * Integer.parseInt(group.substring(group.indexOf('/') + 1))));
+        }
+    }
+}
@@ -1,15 +1,34 @@
 package sample4;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.janusgraph.core.JanusGraph;
 import org.janusgraph.core.JanusGraphFactory;
 import org.janusgraph.core.JanusGraphTransaction;
+import org.janusgraph.core.JanusGraphVertex;
 import org.janusgraph.graphdb.database.StandardJanusGraph;
 import org.janusgraph.graphdb.idmanagement.IDManager;
 
@@ -19,6 +38,10 @@ import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversalSo
 import org.apache.tinkerpop.gremlin.structure.T;
 import org.apache.tinkerpop.gremlin.structure.Vertex;
 
+import sample.ChangeLog;
+import sample.TraversalTemplate;
+import sample.TraversalTemplates;
+
 import static org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.__.*;
 
 public class DataStorageSample {
@@ -46,14 +69,124 @@ public class DataStorageSample {
         }
     }
 
-    private static JanusGraph getInMemoryGraph() {
+    public static void mainAsync(String[] args) throws Exception {
+
+        int N = 1000;
+
+        try (JanusGraphStorage storage = getInMemoryStorage();
+             AsyncJanusGraphStorage async = new AsyncJanusGraphStorage(storage, 100)) {
+
+            long time = System.currentTimeMillis();
+            List<CompletableFuture<Link>> futures = new ArrayList<>(N);
+            for (int i = 0; i < N; i++) {
+                RawLink rawLink = new RawLink("Link" + (i % 7),
+                        new RawNode("Node" + (i % 3), "value" + (i % 11)),
+                        new RawNode("Node" + (i % 5), "value" + (i % 13)));
+                futures.add(async.getLink(rawLink));
+            }
+
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+            System.out.printf("elapsed time: %dms%n", System.currentTimeMillis() - time);
+            async.printStatistics();
+        }
+    }
+
+    public static void mainPrepared(String[] args) throws Exception {
+
+        int N = 1000;
+
+        for (boolean prepared : new boolean[]{false, true}) {
+            try (JanusGraphStorage storage = new JanusGraphStorage(getInMemoryGraph(), prepared)) {
+
+                long time = System.currentTimeMillis();
+                for (int i = 0; i < N; i++) {
+                    int j = i % 50;
+                    try (JanusGraphStorageTransaction tx = storage.tx()) {
+                        tx.getLink(new RawLink("Link" + (j % 7),
+                                new RawLink("Link" + (j % 3), new RawNode("Node" + (j % 5), "value" + (j % 11))),
+                                new RawNode("Node" + (j % 5), "value" + (j % 13))));
+                        tx.commit();
+                    }
+                }
+
+                System.out.printf("prepared: %b, elapsed time: %dms%n", prepared, System.currentTimeMillis() - time);
+                storage.templates.print();
+            }
+        }
+    }
+
+    public static void mainProfiled(String[] args) throws Exception {
+
+        int N = 1000;
+        Path log = Paths.get(args.length > 0 ? args[0] : "target/slow-operations.log");
+
+        try (JanusGraphStorage storage = getInMemoryStorage()) {
+            SlowOperationProfiler profiler = new SlowOperationProfiler(20, TimeUnit.MILLISECONDS, 0.01, log);
+            storage.setProfiler(profiler);
+
+            for (int i = 0; i < N; i++) {
+                try (JanusGraphStorageTransaction tx = storage.tx()) {
+                    tx.getLink(new RawLink("Link" + (i % 7),
+                            new RawNode("Node" + (i % 3), "value" + (i % 11)),
+                            new RawNode("Node" + (i % 5), "value" + (i % 13))));
+                    tx.commit();
+                }
+            }
+
+            profiler.printStatistics();
+            System.out.printf("log: %s%n", log.toAbsolutePath());
+        }
+    }
+
+    public static void mainChangeLog(String[] args) throws Exception {
+
+        int N = 1000;
+        Path directory = Paths.get(args.length > 0 ? args[0] : "target/changelog4");
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        long atoms;
+        try (JanusGraphStorage storage = new JanusGraphStorage(getInMemoryGraph(), true);
+             ChangeLog log = new ChangeLog(directory)) {
+            storage.setChangeLog(log);
+
+            for (int i = 0; i < N; i++) {
+                try (JanusGraphStorageTransaction tx = storage.tx()) {
+                    tx.getLink(new RawLink("Link" + (i % 7),
+                            new RawLink("Link" + (i % 3), new RawNode("Node" + (i % 5), "value" + (i % 11))),
+                            new RawNode("Node" + (i % 5), "value" + (i % 13))));
+                    tx.commit();
+                }
+                if (i == N / 2) {
+                    log.checkpoint();
+                }
+            }
+
+            atoms = storage.graph.traversal().V().count().next();
+            log.printStatistics();
+        }
+
+        long time = System.currentTimeMillis();
+        try (JanusGraphStorage recovered = getInMemoryStorage()) {
+            long replayed = recovered.recover(directory);
+            System.out.printf("recovery: %dms, replayed: %d, atoms: %d, expected: %d%n",
+                    System.currentTimeMillis() - time, replayed, recovered.graph.traversal().V().count().next(), atoms);
+        }
+    }
+
+    static JanusGraph getInMemoryGraph() {
         return JanusGraphFactory.build()
                 .set("storage.backend", "inmemory")
                 .set("graph.set-vertex-id", "true")
                 .open();
     }
 
-    private static JanusGraphStorage getInMemoryStorage() {
+    static JanusGraphStorage getInMemoryStorage() {
         return new JanusGraphStorage(getInMemoryGraph());
     }
 
@@ -64,16 +197,64 @@ public class DataStorageSample {
         long currentId = 0;
         final JanusGraph graph;
         final IDManager idManager;
+        // atoms are resolved one by one with cached lookup templates instead of one traversal per atom
+        final boolean prepared;
+        final TraversalTemplates templates = new TraversalTemplates();
+        SlowOperationProfiler profiler;
+        ChangeLog changeLog;
 
         public JanusGraphStorage(JanusGraph graph) {
+            this(graph, false);
+        }
+
+        public JanusGraphStorage(JanusGraph graph, boolean prepared) {
             this.graph = graph;
             this.idManager = ((StandardJanusGraph) graph).getIDManager();
+            this.prepared = prepared;
         }
 
         public JanusGraphStorageTransaction tx() {
             return new JanusGraphStorageTransaction(this);
         }
 
+        public void setProfiler(SlowOperationProfiler profiler) {
+            this.profiler = profiler;
+        }
+
+        // atoms created by following commits are logged, which requires prepared lookups:
+        // the traversal of an unprepared link lookup can create atoms which are not among its results
+        public void setChangeLog(ChangeLog changeLog) {
+            if (!prepared) {
+                throw new IllegalStateException("Unprepared lookups can not log all atoms they create");
+            }
+            this.changeLog = changeLog;
+        }
+
+        // recreates the atoms of a change log, before a change log is set
+        public long recover(Path directory) throws IOException {
+            long[] atoms = new long[1];
+            try (JanusGraphTransaction tx = graph.newTransaction()) {
+                currentId = Math.max(currentId, ChangeLog.replay(directory, change -> {
+                    if (change.isLeaf()) {
+                        tx.addVertex(T.label, JanusGraphStorageTransaction.LABEL_NODE,
+                                T.id, change.id,
+                                JanusGraphStorageTransaction.KIND, JanusGraphStorageTransaction.LABEL_NODE,
+                                JanusGraphStorageTransaction.TYPE, change.type,
+                                JanusGraphStorageTransaction.VALUE, change.value);
+                    } else {
+                        tx.addVertex(T.label, JanusGraphStorageTransaction.LABEL_LINK,
+                                T.id, change.id,
+                                JanusGraphStorageTransaction.KIND, JanusGraphStorageTransaction.LABEL_LINK,
+                                JanusGraphStorageTransaction.TYPE, change.type,
+                                JanusGraphStorageTransaction.IDS, idsToString(change.ids));
+                    }
+                    atoms[0]++;
+                }));
+                tx.commit();
+            }
+            return atoms[0];
+        }
+
         @Override
         public void close() {
             graph.close();
@@ -84,6 +265,174 @@ public class DataStorageSample {
         }
     }
 
+    // Asynchronous access to JanusGraph Storage
+
+    /**
+     * Collects concurrent lookups into batches which are resolved in one transaction each.
+     * Batching only shares the transaction and its commit: the same atom requested several
+     * times in a batch is looked up once, every distinct atom still runs its own lookup
+     * traversal on the drain thread.
+     * <p>
+     * Batches are drained one after another by a single task at a time, writers of this
+     * storage do not claim atoms, so concurrent batches could create the same atom twice.
+     * The executor only provides the thread of the drain and does not run lookups in parallel.
+     */
+    static class AsyncJanusGraphStorage implements Closeable {
+
+        final JanusGraphStorage storage;
+        final ExecutorService executor;
+        final int maxBatchSize;
+
+        final Queue<Request<?>> queue = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        boolean closed;
+
+        final LongAdder requests = new LongAdder();
+        final LongAdder lookups = new LongAdder();
+        final LongAdder batches = new LongAdder();
+
+        public AsyncJanusGraphStorage(JanusGraphStorage storage, int maxBatchSize) {
+            this.storage = storage;
+            this.executor = newExecutor();
+            this.maxBatchSize = maxBatchSize;
+        }
+
+        public CompletableFuture<Node> getNode(RawNode node) {
+            return submit(node, tx -> tx.getNode(node));
+        }
+
+        public CompletableFuture<Link> getLink(RawLink link) {
+            return submit(link, tx -> tx.getLink(link));
+        }
+
+        private <T> CompletableFuture<T> submit(RawAtom atom, Function<JanusGraphStorageTransaction, T> operation) {
+            Request<T> request = new Request<>(atom.getClass().getSimpleName() + ":" + atom, operation);
+            // a request accepted before close is always drained before the executor is shut down
+            synchronized (this) {
+                if (closed) {
+                    request.future.completeExceptionally(new IllegalStateException("Storage is closed"));
+                    return request.future;
+                }
+                requests.increment();
+                queue.add(request);
+                schedule();
+            }
+            return request.future;
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                List<Request<?>> batch;
+                while (!(batch = poll()).isEmpty()) {
+                    execute(batch);
+                }
+            } finally {
+                scheduled.set(false);
+                if (!queue.isEmpty()) {
+                    schedule();
+                }
+            }
+        }
+
+        private List<Request<?>> poll() {
+            List<Request<?>> batch = new ArrayList<>();
+            Request<?> request;
+            while (batch.size() < maxBatchSize && (request = queue.poll()) != null) {
+                batch.add(request);
+            }
+            return batch;
+        }
+
+        private void execute(List<Request<?>> batch) {
+
+            batches.increment();
+            Map<String, Object> results = new HashMap<>();
+
+            try (JanusGraphStorageTransaction tx = storage.tx()) {
+                for (Request<?> request : batch) {
+                    try {
+                        request.result = results.computeIfAbsent(request.key, key -> {
+                            lookups.increment();
+                            return request.operation.apply(tx);
+                        });
+                    } catch (RuntimeException e) {
+                        request.error = e;
+                    }
+                }
+                tx.commit();
+            } catch (RuntimeException e) {
+                for (Request<?> request : batch) {
+                    request.error = e;
+                }
+            }
+
+            for (Request<?> request : batch) {
+                request.complete();
+            }
+        }
+
+        public void printStatistics() {
+            System.out.printf("requests: %d, lookups: %d, batches: %d%n",
+                    requests.sum(), lookups.sum(), batches.sum());
+        }
+
+        @Override
+        public void close() {
+            synchronized (this) {
+                closed = true;
+            }
+
+            try {
+                while (scheduled.get() || !queue.isEmpty()) {
+                    Thread.sleep(1);
+                }
+                executor.shutdown();
+                executor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // virtual threads are used when the running JDK provides them
+        static ExecutorService newExecutor() {
+            try {
+                return (ExecutorService) Executors.class
+                        .getMethod("newVirtualThreadPerTaskExecutor")
+                        .invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            }
+        }
+    }
+
+    static class Request<T> {
+        final String key;
+        final Function<JanusGraphStorageTransaction, T> operation;
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        Object result;
+        RuntimeException error;
+
+        public Request(String key, Function<JanusGraphStorageTransaction, T> operation) {
+            this.key = key;
+            this.operation = operation;
+        }
+
+        @SuppressWarnings("unchecked")
+        void complete() {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else {
+                future.complete((T) result);
+            }
+        }
+    }
+
     static class JanusGraphStorageTransaction implements Closeable {
 
         // "type" is a reserved property name in JanusGraph
@@ -98,6 +447,8 @@ public class DataStorageSample {
         final JanusGraphStorage storage;
         final JanusGraphTransaction tx;
         final GraphTraversalSource g;
+        final ChangeLog.Batch changes = new ChangeLog.Batch();
+        final Set<Long> logged = new HashSet<>();
 
         public JanusGraphStorageTransaction(JanusGraphStorage storage) {
             this.storage = storage;
@@ -106,34 +457,118 @@ public class DataStorageSample {
         }
 
         public Node getNode(RawNode node) {
+            if (storage.profiler == null) {
+                return doGetNode(node, null);
+            }
+            return storage.profiler.execute("getNode " + node, capture -> doGetNode(node, capture), result -> g
+                    .V()
+                    .hasLabel(LABEL_NODE)
+                    .has(TYPE, node.type)
+                    .has(VALUE, node.value));
+        }
+
+        public Link getLink(RawLink link) {
+            if (storage.profiler == null) {
+                return doGetLink(link, null);
+            }
+            return storage.profiler.execute("getLink " + link, capture -> doGetLink(link, capture), result -> g
+                    .V()
+                    .hasLabel(LABEL_LINK)
+                    .has(KIND, LABEL_LINK)
+                    .has(TYPE, link.type)
+                    .has(IDS, idsToString(result.ids)));
+        }
+
+        // prepared lookups run several templates, so only the single traversal of the
+        // unprepared path is profiled
+        private Node doGetNode(RawNode node, SlowOperationProfiler.Capture capture) {
+            if (storage.prepared) {
+                Vertex v = resolveNode(node);
+                logCreated(v);
+                return new Node(id(v), node.type, node.value);
+            }
+
             GraphTraversal<String, Vertex> traversal = g
                     .inject("nothing")
                     .union(getOrCreateNode(node));
+            if (capture != null) {
+                traversal = capture.profile(traversal);
+            }
 
             if (DEBUG) {
                 System.out.printf("get node: %s%n", traversal);
             }
 
             Vertex v = traversal.next();
+            if (capture != null) {
+                capture.complete(traversal);
+            }
+            logCreated(v);
             return new Node(id(v), node.type, node.value);
         }
 
-        public Link getLink(RawLink link) {
+        private Link doGetLink(RawLink link, SlowOperationProfiler.Capture capture) {
+
+            if (storage.prepared) {
+                Vertex v = resolveLink(link);
+                logCreated(v);
+                return new Link(id(v), link.type, ids(v));
+            }
 
             GraphTraversal<String, Vertex> traversal = g
                     .inject("nothing")
                     .union(getOrCreateLink(link));
+            if (capture != null) {
+                traversal = capture.profile(traversal);
+            }
 
             if (DEBUG) {
                 System.out.printf("get link: %s%n", traversal);
             }
 
             Vertex v = traversal.next();
+            if (capture != null) {
+                capture.complete(traversal);
+            }
+            logCreated(v);
             return new Link(id(v), link.type, ids(v));
         }
 
+        // atoms created by the traversals are only known by their result, children of a new
+        // link are looked up and logged first
+        private void logCreated(Vertex v) {
+            if (storage.changeLog == null || !((JanusGraphVertex) v).isNew() || !logged.add(id(v))) {
+                return;
+            }
+
+            String type = v.property(TYPE).value().toString();
+            if (LABEL_NODE.equals(v.label())) {
+                changes.leaf(id(v), type, v.property(VALUE).value().toString());
+                return;
+            }
+
+            long[] ids = ids(v);
+            for (long child : ids) {
+                logCreated(tx.getVertex(child));
+            }
+            changes.node(id(v), type, ids.length, false, ids);
+        }
+
         public void commit() {
-            tx.commit();
+            ChangeLog log = storage.changeLog;
+            if (log == null) {
+                tx.commit();
+                return;
+            }
+            // keeps the log in commit order, see sample.JanusGraphSorage#commit
+            synchronized (log) {
+                tx.commit();
+                try {
+                    log.append(changes, storage.currentId);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
         }
 
         @Override
@@ -141,6 +576,64 @@ public class DataStorageSample {
             tx.close();
         }
 
+        private Vertex resolveAtom(RawAtom atom) {
+            if (atom instanceof RawNode) {
+                return resolveNode((RawNode) atom);
+            } else if (atom instanceof RawLink) {
+                return resolveLink((RawLink) atom);
+            } else {
+                String msg = String.format("Unknown RawAtom class: %s", atom.getClass());
+                throw new RuntimeException(msg);
+            }
+        }
+
+        private Vertex resolveNode(RawNode node) {
+
+            Vertex v = storage.templates.<Vertex, Vertex>get(LABEL_NODE, 2, () -> storage.graph.traversal()
+                    .V()
+                    .hasLabel(LABEL_NODE)
+                    .has(TYPE, TraversalTemplate.parameter(0))
+                    .has(VALUE, TraversalTemplate.parameter(1)))
+                    .next(tx, node.type, node.value);
+
+            if (v != null) {
+                return v;
+            }
+
+            return tx.addVertex(T.label, LABEL_NODE,
+                    T.id, storage.getNextId(),
+                    KIND, LABEL_NODE,
+                    TYPE, node.type,
+                    VALUE, node.value);
+        }
+
+        private Vertex resolveLink(RawLink link) {
+
+            long[] ids = new long[link.getArity()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = id(resolveAtom(link.atoms[i]));
+            }
+            String idsString = idsToString(ids);
+
+            Vertex v = storage.templates.<Vertex, Vertex>get(LABEL_LINK, 2, () -> storage.graph.traversal()
+                    .V()
+                    .hasLabel(LABEL_LINK)
+                    .has(KIND, LABEL_LINK)
+                    .has(TYPE, TraversalTemplate.parameter(0))
+                    .has(IDS, TraversalTemplate.parameter(1)))
+                    .next(tx, link.type, idsString);
+
+            if (v != null) {
+                return v;
+            }
+
+            return tx.addVertex(T.label, LABEL_LINK,
+                    T.id, storage.getNextId(),
+                    KIND, LABEL_LINK,
+                    TYPE, link.type,
+                    IDS, idsString);
+        }
+
         private GraphTraversal<Object, Vertex> getOrCreateAtom(RawAtom atom) {
             if (atom instanceof RawNode) {
                 return getOrCreateNode((RawNode) atom);
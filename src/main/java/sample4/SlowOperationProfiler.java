@@ -0,0 +1,195 @@
+package sample4;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.tinkerpop.gremlin.process.traversal.Traversal;
+import org.apache.tinkerpop.gremlin.process.traversal.dsl.graph.GraphTraversal;
+import org.apache.tinkerpop.gremlin.process.traversal.util.Metrics;
+import org.apache.tinkerpop.gremlin.process.traversal.util.TraversalMetrics;
+
+/**
+ * Times storage operations and captures the profile() metrics of operations which are
+ * slower than a threshold or randomly sampled.
+ * <p>
+ * Sampling is decided before the operation runs, so a sampled operation profiles its own
+ * traversal through the {@link Capture} it is given. Slowness is only known afterwards,
+ * so a slow operation which was not sampled, or which does not run a single traversal,
+ * gets a post-hoc lookup profile: its lookup traversal is re-run with profile() against
+ * the now warm transaction and only describes the read part of the operation. Every capture
+ * states which kind of profile it holds. Captures are appended to a log which is rolled
+ * over when it grows beyond the given size.
+ */
+public class SlowOperationProfiler {
+
+    final long thresholdNanos;
+    final double sampleRate;
+    final Path log;
+    final long maxLogSize;
+    final int maxLogFiles;
+
+    final LongAdder operations = new LongAdder();
+    final LongAdder slow = new LongAdder();
+    final LongAdder sampled = new LongAdder();
+    final LongAdder failures = new LongAdder();
+
+    public SlowOperationProfiler(long threshold, TimeUnit unit, double sampleRate, Path log) {
+        this(threshold, unit, sampleRate, log, 10 * 1024 * 1024, 5);
+    }
+
+    public SlowOperationProfiler(long threshold, TimeUnit unit, double sampleRate, Path log,
+                                 long maxLogSize, int maxLogFiles) {
+        this.thresholdNanos = unit.toNanos(threshold);
+        this.sampleRate = sampleRate;
+        this.log = log;
+        this.maxLogSize = maxLogSize;
+        this.maxLogFiles = maxLogFiles;
+    }
+
+    /**
+     * Runs the operation and captures the profile of its execution when it is sampled, or
+     * a post-hoc profile of the lookup traversal built from its result when it is slow.
+     */
+    public <T> T execute(String operation, ProfiledAction<T> action, ProfileSource<T> lookup) {
+
+        Capture capture = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate
+                ? new Capture() : null;
+
+        long time = System.nanoTime();
+        T result = action.run(capture);
+        long elapsed = System.nanoTime() - time;
+
+        operations.increment();
+
+        String reason;
+        if (elapsed >= thresholdNanos) {
+            slow.increment();
+            reason = "slow";
+        } else if (capture != null) {
+            sampled.increment();
+            reason = "sampled";
+        } else {
+            return result;
+        }
+
+        try {
+            if (capture != null && capture.metrics != null) {
+                write(operation, reason, "execution", elapsed, capture.metrics);
+            } else {
+                write(operation, reason, "post-hoc lookup", elapsed, lookup.traversal(result).profile().next());
+            }
+        } catch (RuntimeException e) {
+            // profiling must never fail the operation
+            failures.increment();
+        }
+        return result;
+    }
+
+    private synchronized void write(String operation, String reason, String kind, long elapsed,
+                                    TraversalMetrics metrics) {
+
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("%s %s %s: %.3fms, %s profile, backend queries: %d, full scans: %d%n",
+                Instant.now(), reason, operation, elapsed / 1e6, kind,
+                count(metrics.getMetrics(), "backend-query"), count(metrics.getMetrics(), "scan")));
+        builder.append(metrics).append(System.lineSeparator()).append(System.lineSeparator());
+
+        try {
+            if (Files.exists(log) && Files.size(log) >= maxLogSize) {
+                roll();
+            }
+            if (log.getParent() != null) {
+                Files.createDirectories(log.getParent());
+            }
+            try (Writer writer = Files.newBufferedWriter(log, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                writer.write(builder.toString());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // log -> log.1 -> log.2 ... the oldest file is dropped
+    private void roll() throws IOException {
+        Files.deleteIfExists(rolled(maxLogFiles - 1));
+        for (int i = maxLogFiles - 2; i >= 1; i--) {
+            Path file = rolled(i);
+            if (Files.exists(file)) {
+                Files.move(file, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxLogFiles > 1) {
+            Files.move(log, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(log);
+        }
+    }
+
+    private Path rolled(int index) {
+        return log.resolveSibling(log.getFileName() + "." + index);
+    }
+
+    // JanusGraph reports index queries sent to the storage backend as nested "backend-query"
+    // metrics and queries without a usable index as nested "scan" metrics
+    private static long count(Iterable<? extends Metrics> metrics, String name) {
+        long count = 0;
+        for (Metrics metric : metrics) {
+            if (name.equals(metric.getName())) {
+                count++;
+            }
+            count += count(metric.getNested(), name);
+        }
+        return count;
+    }
+
+    public void printStatistics() {
+        System.out.printf("operations: %d, slow: %d, sampled: %d, profile failures: %d%n",
+                operations.sum(), slow.sum(), sampled.sum(), failures.sum());
+    }
+
+    public interface ProfiledAction<T> {
+        /**
+         * Runs the operation, the capture is null unless the operation is sampled.
+         */
+        T run(Capture capture);
+    }
+
+    public interface ProfileSource<T> {
+        Traversal<?, ?> traversal(T result);
+    }
+
+    /**
+     * Profiles the traversal of a sampled operation as a side effect, its results are unchanged.
+     */
+    public static class Capture {
+
+        static final String KEY = "slow-operation-profile";
+
+        TraversalMetrics metrics;
+
+        public <S, E> GraphTraversal<S, E> profile(GraphTraversal<S, E> traversal) {
+            return traversal.profile(KEY);
+        }
+
+        /**
+         * Exhausts the traversal, which completes its metrics, and keeps them.
+         */
+        public void complete(Traversal<?, ?> traversal) {
+            while (traversal.hasNext()) {
+                traversal.next();
+            }
+            metrics = traversal.asAdmin().getSideEffects().get(KEY);
+        }
+    }
+}